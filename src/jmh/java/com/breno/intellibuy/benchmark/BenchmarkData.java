@@ -0,0 +1,83 @@
+package com.breno.intellibuy.benchmark;
+
+import com.breno.intellibuy.model.Customer;
+import com.breno.intellibuy.model.Product;
+import com.breno.intellibuy.model.Purchase;
+import com.breno.intellibuy.model.PurchaseItem;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds entity graphs shaped like the ones the DataLoader generates, with a fixed seed.
+ */
+public final class BenchmarkData {
+
+    private static final String[] ADJECTIVES = {"Smart", "Portable", "Durable", "Modern", "Compact", "Wireless"};
+    private static final String[] NOUNS = {"Smartphone", "Laptop", "Headphones", "Camera", "Tablet", "Drone"};
+
+    private BenchmarkData() {
+    }
+
+    public static List<Product> products(int count) {
+        Random random = new Random(42);
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            BigDecimal price = BigDecimal.valueOf(random.nextDouble() * 1950 + 50).setScale(2, RoundingMode.HALF_UP);
+            products.add(new Product((long) i + 1,
+                    ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " " + NOUNS[random.nextInt(NOUNS.length)],
+                    price,
+                    "Perfect for work and entertainment, featuring a stunning high-resolution display.",
+                    null));
+        }
+        return products;
+    }
+
+    public static Customer customer(long id) {
+        return new Customer(id, "Customer " + id, String.valueOf(12345 + id), String.valueOf(9900 + id), null);
+    }
+
+    public static Purchase purchase(long id, Customer customer, List<Product> products, int items) {
+        Purchase purchase = new Purchase();
+        purchase.setId(id);
+        purchase.setCustomer(customer);
+        purchase.setDatePurchase(LocalDateTime.of(2025, 3, 14, 10, 30));
+        List<PurchaseItem> purchaseItems = new ArrayList<>(items);
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < items; i++) {
+            Product product = products.get(i % products.size());
+            PurchaseItem item = new PurchaseItem((long) i + 1, purchase, product, i % 3 + 1);
+            purchaseItems.add(item);
+            total = total.add(product.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+        }
+        purchase.setPurchaseItem(purchaseItems);
+        purchase.setTotalValue(total);
+        return purchase;
+    }
+
+    /**
+     * A purchase as it arrives in a POST body: items reference products by ID only.
+     */
+    public static Purchase purchaseRequest(long customerId, int items) {
+        Purchase purchase = new Purchase();
+        Customer customer = new Customer();
+        customer.setId(customerId);
+        purchase.setCustomer(customer);
+        List<PurchaseItem> purchaseItems = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            Product product = new Product();
+            product.setId((long) i + 1);
+            PurchaseItem item = new PurchaseItem();
+            item.setProduct(product);
+            item.setQuantity(i % 3 + 1);
+            purchaseItems.add(item);
+        }
+        purchase.setPurchaseItem(purchaseItems);
+        return purchase;
+    }
+
+}
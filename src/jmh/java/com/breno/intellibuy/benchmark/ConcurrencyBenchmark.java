@@ -0,0 +1,85 @@
+package com.breno.intellibuy.benchmark;
+
+import com.breno.intellibuy.config.Bulkhead;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test for the request thread model. Each invocation fires {@code requests} CRUD calls
+ * (a 20 ms database wait) alongside as many chat calls (a 500 ms LLM wait behind the chat
+ * bulkhead) and measures how long until every CRUD call is done. With a Tomcat-sized platform
+ * pool the chat calls waiting for a permit hold threads the CRUD calls need; on virtual
+ * threads CRUD latency stays flat as concurrency grows.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class ConcurrencyBenchmark {
+
+    private static final long DATABASE_WAIT_MILLIS = 20;
+    private static final long LLM_WAIT_MILLIS = 500;
+
+    @Param({"100", "1000"})
+    int requests;
+
+    @Param({"platform", "virtual"})
+    String threads;
+
+    private ExecutorService executor;
+    private Bulkhead chatBulkhead;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        executor = threads.equals("virtual")
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(200);
+        chatBulkhead = new Bulkhead("ollama-chat", 4, Duration.ofMillis(250), new SimpleMeterRegistry());
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public int crudUnderChatLoad() throws Exception {
+        List<Future<?>> crud = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            executor.submit(this::chatCall);
+            crud.add(executor.submit(() -> sleep(DATABASE_WAIT_MILLIS)));
+        }
+        for (Future<?> call : crud) {
+            call.get();
+        }
+        return crud.size();
+    }
+
+    private void chatCall() {
+        try {
+            chatBulkhead.call(() -> {
+                sleep(LLM_WAIT_MILLIS);
+                return null;
+            });
+        } catch (ResponseStatusException rejected) {
+            // shed by the bulkhead, as the endpoint would answer 503
+        }
+    }
+
+    private static void sleep(long millis) {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.breno.intellibuy.benchmark;
+
+import com.breno.intellibuy.model.Customer;
+import com.breno.intellibuy.model.Product;
+import com.breno.intellibuy.model.Purchase;
+import com.breno.intellibuy.services.ai.DocumentTextRenderer;
+import com.breno.intellibuy.services.ai.EmbeddingDocumentFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Cost of turning entities into vector store documents, the per-row CPU work of bulk ingestion.
+ * The {@code *Text} pairs compare {@link DocumentTextRenderer} with the {@code String.format}
+ * templates it replaced; run with {@code -prof gc} to compare allocation per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class DocumentFormattingBenchmark {
+
+    @Param({"1", "5", "20"})
+    int purchaseItems;
+
+    private final EmbeddingDocumentFactory documentFactory = new EmbeddingDocumentFactory();
+    private Product product;
+    private Customer customer;
+    private Purchase purchase;
+
+    @Setup
+    public void setUp() {
+        List<Product> products = BenchmarkData.products(purchaseItems);
+        product = products.get(0);
+        customer = BenchmarkData.customer(7L);
+        purchase = BenchmarkData.purchase(3L, customer, products, purchaseItems);
+    }
+
+    @Benchmark
+    public Document productDocument() {
+        return documentFactory.productDocument(product);
+    }
+
+    @Benchmark
+    public Document customerDocument() {
+        return documentFactory.customerDocument(customer);
+    }
+
+    @Benchmark
+    public Document purchaseDocument() {
+        return documentFactory.purchaseDocument(purchase);
+    }
+
+    @Benchmark
+    public String productTextFormat() {
+        return String.format("Product: %s. Description: %s. Price: $%.2f.",
+                product.getName(), product.getDescription(), product.getPrice());
+    }
+
+    @Benchmark
+    public String productTextRenderer() {
+        return DocumentTextRenderer.product(product);
+    }
+
+    @Benchmark
+    public String customerTextFormat() {
+        return String.format("Customer: %s. CPF: %s. Phone: %s.",
+                customer.getName(), customer.getCpf(), customer.getPhone());
+    }
+
+    @Benchmark
+    public String customerTextRenderer() {
+        return DocumentTextRenderer.customer(customer);
+    }
+
+    @Benchmark
+    public String purchaseTextFormat() {
+        String itemsSummary = purchase.getPurchaseItem().stream()
+                .map(item -> String.format("%d unit(s) of %s", item.getQuantity(), item.getProduct().getName()))
+                .collect(Collectors.joining(", "));
+        return String.format("Purchase made by customer %s on %s. Items: [%s]. Total value: $%.2f.",
+                purchase.getCustomer().getName(),
+                purchase.getDatePurchase().toLocalDate().toString(),
+                itemsSummary,
+                purchase.getTotalValue());
+    }
+
+    @Benchmark
+    public String purchaseTextRenderer() {
+        return DocumentTextRenderer.purchase(purchase);
+    }
+
+}
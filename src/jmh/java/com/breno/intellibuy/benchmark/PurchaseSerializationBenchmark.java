@@ -0,0 +1,35 @@
+package com.breno.intellibuy.benchmark;
+
+import com.breno.intellibuy.model.Purchase;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON serialization of a purchase with its item and product graph, as returned by the purchase endpoints.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class PurchaseSerializationBenchmark {
+
+    @Param({"1", "10", "100"})
+    int purchaseItems;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private Purchase purchase;
+
+    @Setup
+    public void setUp() {
+        purchase = BenchmarkData.purchase(1L, BenchmarkData.customer(1L), BenchmarkData.products(purchaseItems), purchaseItems);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return objectMapper.writeValueAsBytes(purchase);
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.breno.intellibuy.benchmark;
+
+import com.breno.intellibuy.model.Customer;
+import com.breno.intellibuy.model.Product;
+import com.breno.intellibuy.model.Purchase;
+import com.breno.intellibuy.model.PurchaseItem;
+import com.breno.intellibuy.repository.CustomerRepository;
+import com.breno.intellibuy.repository.ProductRepository;
+import com.breno.intellibuy.repository.PurchaseRepository;
+import com.breno.intellibuy.services.CacheInvalidationBus;
+import com.breno.intellibuy.services.EntityCache;
+import com.breno.intellibuy.services.PurchaseService;
+import com.breno.intellibuy.services.PurchaseStatsService;
+import com.breno.intellibuy.services.ai.DataEmbeddingService;
+import com.breno.intellibuy.services.ai.EmbeddingDocumentFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Latency of {@link PurchaseService#save} against basket size. Repositories are stubs that
+ * spend {@code roundTripMicros} per query, standing in for a Postgres round-trip, so the
+ * batched product lookup can be compared with the previous one-query-per-item loop. With
+ * {@code cached} the customer and products come from the entity cache after the first call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class PurchaseServiceBenchmark {
+
+    @Param({"1", "10", "50"})
+    int basketSize;
+
+    @Param({"0", "200"})
+    long roundTripMicros;
+
+    @Param({"false", "true"})
+    boolean cached;
+
+    private PurchaseService purchaseService;
+    private ProductRepository productRepository;
+    private CustomerRepository customerRepository;
+
+    @Setup
+    public void setUp() {
+        List<Product> products = BenchmarkData.products(basketSize);
+        Map<Long, Product> productsById = products.stream().collect(Collectors.toMap(Product::getId, Function.identity()));
+        Customer customer = BenchmarkData.customer(1L);
+
+        productRepository = mock(ProductRepository.class, withSettings().stubOnly());
+        when(productRepository.findById(anyLong())).thenAnswer(invocation -> {
+            roundTrip();
+            return Optional.ofNullable(productsById.get(invocation.<Long>getArgument(0)));
+        });
+        when(productRepository.findAllById(any())).thenAnswer(invocation -> {
+            roundTrip();
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(productsById::get).toList();
+        });
+
+        customerRepository = mock(CustomerRepository.class, withSettings().stubOnly());
+        when(customerRepository.findById(anyLong())).thenAnswer(invocation -> {
+            roundTrip();
+            return Optional.of(customer);
+        });
+
+        PurchaseRepository purchaseRepository = mock(PurchaseRepository.class, withSettings().stubOnly());
+        when(purchaseRepository.save(any())).thenAnswer(invocation -> {
+            roundTrip();
+            Purchase purchase = invocation.getArgument(0);
+            purchase.setId(1L);
+            return purchase;
+        });
+
+        EmbeddingDocumentFactory documentFactory = new EmbeddingDocumentFactory();
+        DataEmbeddingService dataEmbeddingService = mock(DataEmbeddingService.class, withSettings().stubOnly());
+        doAnswer(invocation -> documentFactory.purchaseDocument(invocation.getArgument(0)))
+                .when(dataEmbeddingService).embedPurchase(any());
+
+        PurchaseStatsService purchaseStatsService = mock(PurchaseStatsService.class, withSettings().stubOnly());
+        doAnswer(invocation -> {
+            // customer upsert plus the two batched product upserts
+            roundTrip();
+            roundTrip();
+            roundTrip();
+            return null;
+        }).when(purchaseStatsService).record(any());
+
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CacheInvalidationBus invalidationBus = new CacheInvalidationBus(null, Thread.ofPlatform().factory(), meterRegistry,
+                false, "intellibuy_cache", "", "", "");
+        // a zero TTL expires every entry as soon as it is loaded, i.e. no caching
+        Duration ttl = cached ? Duration.ofMinutes(10) : Duration.ZERO;
+        EntityCache<Customer> customerCache = new EntityCache<>("customers", 1000, ttl,
+                customerRepository::findById, customerRepository::findAllById, Customer::getId,
+                c -> new Customer(c.getId(), c.getName(), c.getCpf(), c.getPhone(), c.getUpdatedAt()), invalidationBus, meterRegistry);
+        EntityCache<Product> productCache = new EntityCache<>("products", 1000, ttl,
+                productRepository::findById, productRepository::findAllById, Product::getId,
+                p -> new Product(p.getId(), p.getName(), p.getPrice(), p.getDescription(), p.getUpdatedAt()), invalidationBus, meterRegistry);
+
+        purchaseService = new PurchaseService(purchaseRepository, customerCache, productCache,
+                purchaseStatsService, dataEmbeddingService);
+    }
+
+    @Benchmark
+    public Purchase save() {
+        return purchaseService.save(BenchmarkData.purchaseRequest(1L, basketSize));
+    }
+
+    /**
+     * The lookup loop {@code PurchaseService.save} used before products were resolved in one query.
+     */
+    @Benchmark
+    public void perItemLookupBaseline(Blackhole blackhole) {
+        Purchase purchase = BenchmarkData.purchaseRequest(1L, basketSize);
+        purchase.setCustomer(customerRepository.findById(purchase.getCustomer().getId()).orElseThrow());
+        BigDecimal totalValue = new BigDecimal("0.0");
+        for (PurchaseItem item : purchase.getPurchaseItem()) {
+            Product product = productRepository.findById(item.getProduct().getId()).orElseThrow();
+            item.setProduct(product);
+            item.setPurchase(purchase);
+            totalValue = totalValue.add(product.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+        }
+        purchase.setDatePurchase(LocalDateTime.now());
+        purchase.setTotalValue(totalValue);
+        roundTrip();
+        blackhole.consume(purchase);
+    }
+
+    private void roundTrip() {
+        if (roundTripMicros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+        }
+    }
+
+}
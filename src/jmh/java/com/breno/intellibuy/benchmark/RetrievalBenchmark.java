@@ -0,0 +1,57 @@
+package com.breno.intellibuy.benchmark;
+
+import com.breno.intellibuy.model.Customer;
+import com.breno.intellibuy.model.Product;
+import com.breno.intellibuy.services.ai.EmbeddingDocumentFactory;
+import com.breno.intellibuy.services.ai.QueryIntentRouter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end retrieval as done by the chat endpoint: intent routing, query embedding and a
+ * filtered similarity search, against an in-process store filled with generated documents.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class RetrievalBenchmark {
+
+    @Param({"1000", "10000"})
+    int documents;
+
+    @Param({"Which wireless products cost under $500?", "What did customer 12 buy in 2025?"})
+    String question;
+
+    private final QueryIntentRouter router = new QueryIntentRouter(5, 0.0);
+    private VectorStore vectorStore;
+
+    @Setup
+    public void setUp() {
+        EmbeddingDocumentFactory documentFactory = new EmbeddingDocumentFactory();
+        List<Product> products = BenchmarkData.products(documents / 2);
+        List<Document> all = new ArrayList<>(documents);
+        for (Product product : products) {
+            all.add(documentFactory.productDocument(product));
+        }
+        for (int i = 0; i < documents / 2; i++) {
+            Customer customer = BenchmarkData.customer(i % 100 + 1);
+            all.add(documentFactory.purchaseDocument(BenchmarkData.purchase(i + 1, customer, products, i % 5 + 1)));
+        }
+        vectorStore = SimpleVectorStore.builder(new FakeEmbeddingModel()).build();
+        vectorStore.add(all);
+    }
+
+    @Benchmark
+    public List<Document> routeAndSearch() {
+        return vectorStore.similaritySearch(router.route(question).toSearchRequest());
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.breno.intellibuy.services.ai;
+
+import com.breno.intellibuy.benchmark.BenchmarkData;
+import com.breno.intellibuy.benchmark.FakeEmbeddingModel;
+import com.breno.intellibuy.model.Customer;
+import com.breno.intellibuy.model.Product;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search latency of the in-process HNSW index, with and without the intent router's metadata
+ * filter. Compare with {@code RetrievalBenchmark}, which scans every document.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class LocalVectorIndexBenchmark {
+
+    @Param({"10000", "100000"})
+    int documents;
+
+    private final EmbeddingModel embeddingModel = new FakeEmbeddingModel();
+    private final QueryIntentRouter router = new QueryIntentRouter(5, 0.0);
+    private LocalVectorIndex index;
+    private QueryIntentRouter.RetrievalPlan plan;
+    private float[] query;
+
+    @Setup
+    public void setUp() {
+        EmbeddingDocumentFactory documentFactory = new EmbeddingDocumentFactory();
+        List<Product> products = BenchmarkData.products(documents / 2);
+        index = new LocalVectorIndex(embeddingModel.dimensions(), 16, 200, documents);
+        for (Product product : products) {
+            add(documentFactory.productDocument(product));
+        }
+        for (int i = 0; i < documents / 2; i++) {
+            Customer customer = BenchmarkData.customer(i % 100 + 1);
+            add(documentFactory.purchaseDocument(BenchmarkData.purchase(i + 1, customer, products, i % 5 + 1)));
+        }
+        plan = router.route("Which wireless products cost under $500?");
+        query = embeddingModel.embed(plan.query());
+    }
+
+    private void add(Document document) {
+        index.upsert(document.getId(), document.getText(), document.getMetadata(), embeddingModel.embed(document.getText()));
+    }
+
+    @Benchmark
+    public List<Document> search() {
+        return index.search(query, plan.topK(), 0.0, null, 100);
+    }
+
+    @Benchmark
+    public List<Document> filteredSearch() {
+        return index.search(query, plan.topK(), 0.0, plan.filter(), 100);
+    }
+
+}
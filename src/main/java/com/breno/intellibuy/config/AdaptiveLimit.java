@@ -0,0 +1,104 @@
+package com.breno.intellibuy.config;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Concurrency limit that adapts between a lower and an upper bound (AIMD): it grows by about one
+ * per window of successful calls while fully used, and is cut by a quarter whenever a call fails
+ * or takes longer than {@code latencyThreshold}. With equal bounds it is a fixed limit.
+ * <p>
+ * Not thread safe; {@link Bulkhead} and {@link LlmScheduler} guard it with their own lock and
+ * decide how callers wait for capacity.
+ */
+public final class AdaptiveLimit {
+
+    private static final double BACKOFF_RATIO = 0.75;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private double limit;
+    private int inFlight;
+
+    AdaptiveLimit(int minConcurrentCalls, int maxConcurrentCalls, Duration latencyThreshold) {
+        this.minLimit = Math.max(1, Math.min(minConcurrentCalls, maxConcurrentCalls));
+        this.maxLimit = Math.max(1, maxConcurrentCalls);
+        this.latencyThresholdNanos = latencyThreshold == null ? Long.MAX_VALUE : latencyThreshold.toNanos();
+        this.limit = maxLimit;
+    }
+
+    boolean hasCapacity() {
+        return inFlight < limit();
+    }
+
+    /**
+     * Counts a call as started and returns whether it used the last free slot.
+     */
+    boolean start() {
+        inFlight++;
+        return inFlight >= limit();
+    }
+
+    /**
+     * Counts a call as finished and adjusts the limit from its outcome.
+     *
+     * @param saturated whether every slot was taken when the call started
+     */
+    void finish(long latencyNanos, boolean success, boolean saturated) {
+        inFlight--;
+        if (!success || latencyNanos > latencyThresholdNanos) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        } else if (saturated) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    int limit() {
+        return (int) limit;
+    }
+
+    int inFlight() {
+        return inFlight;
+    }
+
+    interface Releaser {
+        void release(long latencyNanos, boolean success, boolean saturated);
+    }
+
+    public static final class Permit implements AutoCloseable {
+
+        private final Releaser releaser;
+        private final long acquiredAt;
+        private final boolean saturated;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(Releaser releaser, long acquiredAt, boolean saturated) {
+            this.releaser = releaser;
+            this.acquiredAt = acquiredAt;
+            this.saturated = saturated;
+        }
+
+        /**
+         * Releases the permit after a successful call.
+         */
+        @Override
+        public void close() {
+            release(true);
+        }
+
+        /**
+         * Releases the permit after a failed call, which lowers the concurrency limit.
+         */
+        public void fail() {
+            release(false);
+        }
+
+        private void release(boolean success) {
+            if (released.compareAndSet(false, true)) {
+                releaser.release(System.nanoTime() - acquiredAt, success, saturated);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.breno.intellibuy.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of concurrent calls to one downstream. Callers queue in arrival order for up
+ * to {@code maxWait} and are rejected with 503 afterwards, so a slow dependency cannot absorb
+ * every request thread.
+ * <p>
+ * The cap is an {@link AdaptiveLimit} between {@code minConcurrentCalls} and
+ * {@code maxConcurrentCalls}. With equal bounds it is a fixed bulkhead.
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final AdaptiveLimit limit;
+    private final Duration maxWait;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+    private int waiting;
+    private final Counter rejections;
+    private final Timer waitTime;
+    private final Timer successes;
+    private final Timer failures;
+
+    public Bulkhead(String name, int maxConcurrentCalls, Duration maxWait, MeterRegistry meterRegistry) {
+        this(name, maxConcurrentCalls, maxConcurrentCalls, null, maxWait, meterRegistry);
+    }
+
+    public Bulkhead(String name, int minConcurrentCalls, int maxConcurrentCalls, Duration latencyThreshold,
+                    Duration maxWait, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.limit = new AdaptiveLimit(minConcurrentCalls, maxConcurrentCalls, latencyThreshold);
+        this.maxWait = maxWait;
+        Gauge.builder("intellibuy.bulkhead.available", this, bulkhead -> bulkhead.currentLimit() - bulkhead.inFlight())
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("intellibuy.bulkhead.waiting", this, Bulkhead::waiting)
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("intellibuy.bulkhead.limit", this, Bulkhead::currentLimit)
+                .tag("name", name)
+                .register(meterRegistry);
+        this.rejections = Counter.builder("intellibuy.bulkhead.rejected")
+                .tag("name", name)
+                .register(meterRegistry);
+        this.waitTime = Timer.builder("intellibuy.bulkhead.wait")
+                .tag("name", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.successes = callTimer(name, "success", meterRegistry);
+        this.failures = callTimer(name, "failure", meterRegistry);
+    }
+
+    private static Timer callTimer(String name, String outcome, MeterRegistry meterRegistry) {
+        return Timer.builder("intellibuy.bulkhead.calls")
+                .tag("name", name)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public <T> T call(Supplier<T> supplier) {
+        AdaptiveLimit.Permit permit = acquire();
+        try {
+            T result = supplier.get();
+            permit.close();
+            return result;
+        } catch (RuntimeException | Error e) {
+            permit.fail();
+            throw e;
+        }
+    }
+
+    /**
+     * Acquires a permit that must be closed when the call finishes, or failed if it did not
+     * succeed. Useful for calls whose lifetime does not fit a single method invocation, such as a
+     * streamed response.
+     */
+    public AdaptiveLimit.Permit acquire() {
+        long started = System.nanoTime();
+        boolean saturated;
+        lock.lock();
+        try {
+            long remaining = maxWait.toNanos();
+            boolean queueBehindOthers = waiting > 0;
+            waiting++;
+            try {
+                while (queueBehindOthers || !limit.hasCapacity()) {
+                    queueBehindOthers = false;
+                    if (remaining <= 0) {
+                        rejections.increment();
+                        throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, name + " is overloaded, try again later.");
+                    }
+                    remaining = slotFreed.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting for " + name);
+            } finally {
+                waiting--;
+            }
+            saturated = limit.start();
+            if (waiting > 0 && !saturated) {
+                slotFreed.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        long acquired = System.nanoTime();
+        waitTime.record(acquired - started, TimeUnit.NANOSECONDS);
+        return new AdaptiveLimit.Permit(this::release, acquired, saturated);
+    }
+
+    private void release(long latencyNanos, boolean success, boolean saturated) {
+        (success ? successes : failures).record(latencyNanos, TimeUnit.NANOSECONDS);
+        lock.lock();
+        try {
+            limit.finish(latencyNanos, success, saturated);
+            if (waiting > 0 && limit.hasCapacity()) {
+                slotFreed.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int currentLimit() {
+        return limit.limit();
+    }
+
+    private int inFlight() {
+        return limit.inFlight();
+    }
+
+    private int waiting() {
+        return waiting;
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.breno.intellibuy.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Installs the triggers behind incremental re-ingestion: {@code updated_at} is stamped with the
+ * database clock on every insert and update, item changes touch their purchase, and deletes are
+ * logged to {@code entity_deletions}. Being triggers, they also cover writes made with plain SQL.
+ * <p>
+ * Runs while the context starts, after Hibernate has updated the schema and before the web
+ * server accepts requests, so no write escapes tracking. The functions are replaced on every
+ * start, which needs no table lock; triggers are only created when missing, since creating one
+ * locks its table.
+ */
+@Component
+public class ChangeTrackingInitializer implements InitializingBean {
+
+    private static final String TRIGGER_EXISTS =
+            "select exists (select 1 from pg_trigger where tgname = ? and tgrelid = ?::regclass and not tgisinternal)";
+
+    private static final Map<String, String> ENTITY_TABLES = Map.of(
+            "products", "product",
+            "customers", "customer",
+            "purchases", "purchase");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param entityManagerFactory not used, but ensures the tables exist before triggers are added
+     */
+    public ChangeTrackingInitializer(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        jdbcTemplate.execute("""
+                CREATE OR REPLACE FUNCTION intellibuy_touch_updated_at() RETURNS trigger AS $$
+                BEGIN
+                    NEW.updated_at := localtimestamp;
+                    RETURN NEW;
+                END $$ LANGUAGE plpgsql""");
+        jdbcTemplate.execute("""
+                CREATE OR REPLACE FUNCTION intellibuy_touch_purchase() RETURNS trigger AS $$
+                BEGIN
+                    -- localtimestamp is fixed per transaction, so a basket touches its purchase once
+                    UPDATE purchases SET updated_at = localtimestamp
+                    WHERE id = CASE WHEN TG_OP = 'DELETE' THEN OLD.purchase_id ELSE NEW.purchase_id END
+                      AND updated_at IS DISTINCT FROM localtimestamp;
+                    RETURN NULL;
+                END $$ LANGUAGE plpgsql""");
+        jdbcTemplate.execute("""
+                CREATE OR REPLACE FUNCTION intellibuy_log_deletion() RETURNS trigger AS $$
+                BEGIN
+                    INSERT INTO entity_deletions (entity_type, entity_id, deleted_at)
+                    VALUES (TG_ARGV[0], OLD.id, localtimestamp);
+                    RETURN NULL;
+                END $$ LANGUAGE plpgsql""");
+
+        ENTITY_TABLES.forEach((table, entityType) -> {
+            createTriggerIfMissing(table, table + "_touch_updated_at",
+                    "BEFORE INSERT OR UPDATE ON " + table + " FOR EACH ROW EXECUTE FUNCTION intellibuy_touch_updated_at()");
+            createTriggerIfMissing(table, table + "_log_deletion",
+                    "AFTER DELETE ON " + table + " FOR EACH ROW EXECUTE FUNCTION intellibuy_log_deletion('" + entityType + "')");
+        });
+        createTriggerIfMissing("purchase_items", "purchase_items_touch_purchase",
+                "AFTER INSERT OR UPDATE OR DELETE ON purchase_items FOR EACH ROW EXECUTE FUNCTION intellibuy_touch_purchase()");
+    }
+
+    private void createTriggerIfMissing(String table, String trigger, String definition) {
+        if (triggerExists(table, trigger)) {
+            return;
+        }
+        try {
+            jdbcTemplate.execute("CREATE TRIGGER " + trigger + " " + definition);
+        } catch (DataAccessException e) {
+            // another node starting at the same time may have created it first
+            if (!triggerExists(table, trigger)) {
+                throw e;
+            }
+        }
+    }
+
+    private boolean triggerExists(String table, String trigger) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(TRIGGER_EXISTS, Boolean.class, trigger, table));
+    }
+
+}
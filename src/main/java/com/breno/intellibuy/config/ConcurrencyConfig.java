@@ -0,0 +1,65 @@
+package com.breno.intellibuy.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+
+@Configuration
+public class ConcurrencyConfig {
+
+    @Bean
+    public LlmScheduler llmScheduler(
+            MeterRegistry meterRegistry,
+            @Value("${intellibuy.llm.scheduler.min-concurrent:1}") int minConcurrent,
+            @Value("${intellibuy.llm.scheduler.max-concurrent:4}") int maxConcurrent,
+            @Value("${intellibuy.llm.scheduler.latency-threshold:PT60S}") Duration latencyThreshold,
+            @Value("${intellibuy.llm.scheduler.max-queued:100}") int maxQueued,
+            @Value("${intellibuy.llm.scheduler.interactive-deadline:PT90S}") Duration interactiveDeadline,
+            @Value("${intellibuy.llm.scheduler.background-deadline:PT10M}") Duration backgroundDeadline) {
+        return new LlmScheduler("ollama-chat", minConcurrent, maxConcurrent, latencyThreshold, maxQueued,
+                Map.of(LlmScheduler.Priority.INTERACTIVE, interactiveDeadline,
+                        LlmScheduler.Priority.BACKGROUND, backgroundDeadline),
+                meterRegistry);
+    }
+
+    @Bean
+    public Bulkhead ollamaEmbeddingBulkhead(
+            MeterRegistry meterRegistry,
+            @Value("${intellibuy.bulkhead.ollama-embedding.min-concurrent:2}") int minConcurrent,
+            @Value("${intellibuy.bulkhead.ollama-embedding.max-concurrent:8}") int maxConcurrent,
+            @Value("${intellibuy.bulkhead.ollama-embedding.latency-threshold:PT10S}") Duration latencyThreshold,
+            @Value("${intellibuy.bulkhead.ollama-embedding.max-wait:PT10S}") Duration maxWait) {
+        return new Bulkhead("ollama-embedding", minConcurrent, maxConcurrent, latencyThreshold, maxWait, meterRegistry);
+    }
+
+    /**
+     * Shares one retrieval and generation among concurrent identical chat questions. Followers
+     * wait as long as the leader can take: its time in the scheduler queue, bounded by the
+     * interactive deadline, plus a generation, bounded by the Ollama read timeout.
+     */
+    @Bean
+    public SingleFlight<String, String> chatSingleFlight(
+            MeterRegistry meterRegistry,
+            @Value("${intellibuy.llm.scheduler.interactive-deadline:PT90S}") Duration interactiveDeadline,
+            @Value("${intellibuy.ollama.http.read-timeout:PT120S}") Duration generationTimeout) {
+        return new SingleFlight<>("chat", interactiveDeadline.plus(generationTimeout), meterRegistry);
+    }
+
+    /**
+     * Thread factory for the application's own background workers. Follows
+     * {@code spring.threads.virtual.enabled} so the whole app switches thread model together.
+     */
+    @Bean
+    public ThreadFactory workerThreadFactory(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (virtualThreads) {
+            return Thread.ofVirtual().name("worker-", 0).factory();
+        }
+        return Thread.ofPlatform().name("worker-", 0).daemon(true).factory();
+    }
+
+}
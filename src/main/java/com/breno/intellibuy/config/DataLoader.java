@@ -7,7 +7,10 @@ import com.breno.intellibuy.model.PurchaseItem;
 import com.breno.intellibuy.services.CustomerService;
 import com.breno.intellibuy.services.ProductService;
 import com.breno.intellibuy.services.PurchaseService;
+import com.breno.intellibuy.services.PurchaseStatsService;
 import com.breno.intellibuy.services.ai.DataEmbeddingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
 
@@ -21,45 +24,52 @@ import java.util.Random;
 @Component
 public class DataLoader implements CommandLineRunner {
 
+    private static final Logger log = LoggerFactory.getLogger(DataLoader.class);
+
     private final DataEmbeddingService dataEmbeddingService;
     private final ProductService productService;
     private final CustomerService customerService;
     private final PurchaseService purchaseService;
+    private final PurchaseStatsService purchaseStatsService;
 
     public DataLoader(
             DataEmbeddingService dataEmbeddingService,
             ProductService productService,
             CustomerService customerService,
-            PurchaseService purchaseService
+            PurchaseService purchaseService,
+            PurchaseStatsService purchaseStatsService
     ) {
         this.dataEmbeddingService = dataEmbeddingService;
         this.productService = productService;
         this.customerService = customerService;
         this.purchaseService = purchaseService;
+        this.purchaseStatsService = purchaseStatsService;
     }
 
     @Override
     public void run(String... args) throws Exception {
 
-        if (productService.getAll().isEmpty()) {
-            System.out.println("No products found. Generating dummy product data...");
+        if (productService.isEmpty()) {
+            log.info("No products found. Generating dummy product data...");
             generateDummyProducts(10);
         } else {
-            System.out.println("Existing products detected. Skipping dummy data generation.");
+            log.info("Existing products detected. Skipping dummy data generation.");
         }
 
-        if (customerService.getAll().isEmpty()) {
-            System.out.println("No customers found. Generating dummy customer data...");
+        if (customerService.isEmpty()) {
+            log.info("No customers found. Generating dummy customer data...");
             generateDummyCustomers();
         } else {
-            System.out.println("Existing customers detected. Skipping dummy data generation.");
+            log.info("Existing customers detected. Skipping dummy data generation.");
         }
 
-        if (purchaseService.getAll().isEmpty()) {
-            System.out.println("No purchases found. Generating dummy purchase data...");
+        purchaseStatsService.rebuildIfMissing();
+
+        if (purchaseService.isEmpty()) {
+            log.info("No purchases found. Generating dummy purchase data...");
             generateDummyPurchases();
         } else {
-            System.out.println("Existing purchases detected. Skipping dummy data generation.");
+            log.info("Existing purchases detected. Skipping dummy data generation.");
         }
 
         dataEmbeddingService.runInitialEmbeddingIfNeeded();
@@ -113,9 +123,9 @@ public class DataLoader implements CommandLineRunner {
             product.setPrice(price);
 
             productService.save(product);
-            System.out.println("Dummy product created: " + product.getName() + " - $" + product.getPrice());
+            log.debug("Dummy product created: {} - ${}", product.getName(), product.getPrice());
         }
-        System.out.println(numberOfProducts + " dummy products successfully generated.");
+        log.info("{} dummy products successfully generated.", numberOfProducts);
     }
 
     private void generateDummyCustomers() {
@@ -134,10 +144,10 @@ public class DataLoader implements CommandLineRunner {
             customer.setPhone(listPhone[i]);
 
             customerService.save(customer);
-            System.out.println("Dummy customer created: " + customer.getName());
+            log.debug("Dummy customer created: {}", customer.getName());
         }
 
-        System.out.println("Dummy customers successfully generated");
+        log.info("Dummy customers successfully generated");
 
     }
 
@@ -148,7 +158,7 @@ public class DataLoader implements CommandLineRunner {
         List<Product> products = productService.getAll();
 
         if (customers.isEmpty() || products.isEmpty()) {
-            System.out.println("Cannot generate purchases without customers and products.");
+            log.warn("Cannot generate purchases without customers and products.");
             return;
         }
 
@@ -176,12 +186,12 @@ public class DataLoader implements CommandLineRunner {
 
             try {
                 purchaseService.save(purchase);
-                System.out.println("Dummy purchase created for customer: " + randomCustomer.getName());
+                log.debug("Dummy purchase created for customer: {}", randomCustomer.getName());
             } catch (Exception e) {
-                System.err.println("Error creating dummy purchase: " + e.getMessage());
+                log.warn("Error creating dummy purchase for customer {}", randomCustomer.getName(), e);
             }
         }
-        System.out.println("Dummy purchases successfully generated.");
+        log.info("Dummy purchases successfully generated.");
     }
 
 }
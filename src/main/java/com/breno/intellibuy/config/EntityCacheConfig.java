@@ -0,0 +1,51 @@
+package com.breno.intellibuy.config;
+
+import com.breno.intellibuy.model.Customer;
+import com.breno.intellibuy.model.Product;
+import com.breno.intellibuy.repository.CustomerRepository;
+import com.breno.intellibuy.repository.ProductRepository;
+import com.breno.intellibuy.services.CacheInvalidationBus;
+import com.breno.intellibuy.services.EntityCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class EntityCacheConfig {
+
+    @Bean
+    public EntityCache<Product> productCache(
+            ProductRepository productRepository,
+            CacheInvalidationBus invalidationBus,
+            MeterRegistry meterRegistry,
+            @Value("${intellibuy.cache.product.max-size:10000}") long maxSize,
+            @Value("${intellibuy.cache.product.ttl:PT10M}") Duration ttl) {
+        return new EntityCache<>("products", maxSize, ttl,
+                productRepository::findById,
+                productRepository::findAllById,
+                Product::getId,
+                product -> new Product(product.getId(), product.getName(), product.getPrice(),
+                        product.getDescription(), product.getUpdatedAt()),
+                invalidationBus, meterRegistry);
+    }
+
+    @Bean
+    public EntityCache<Customer> customerCache(
+            CustomerRepository customerRepository,
+            CacheInvalidationBus invalidationBus,
+            MeterRegistry meterRegistry,
+            @Value("${intellibuy.cache.customer.max-size:10000}") long maxSize,
+            @Value("${intellibuy.cache.customer.ttl:PT10M}") Duration ttl) {
+        return new EntityCache<>("customers", maxSize, ttl,
+                customerRepository::findById,
+                customerRepository::findAllById,
+                Customer::getId,
+                customer -> new Customer(customer.getId(), customer.getName(), customer.getCpf(),
+                        customer.getPhone(), customer.getUpdatedAt()),
+                invalidationBus, meterRegistry);
+    }
+
+}
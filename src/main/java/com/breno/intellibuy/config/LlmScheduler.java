@@ -0,0 +1,253 @@
+package com.breno.intellibuy.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Admission control for LLM calls. Up to the concurrency limit calls run at once; the others
+ * wait in a bounded queue ordered by priority, then arrival. Each request has a deadline taken
+ * from its priority, and is dropped with 503 as soon as the remaining time is shorter than a
+ * typical call, since it could no longer finish in time. A request that finds the queue full
+ * gets 429, unless it can take the place of a lower priority waiter, which then gets the 429.
+ * <p>
+ * The concurrency limit is an {@link AdaptiveLimit}, as in {@link Bulkhead}; this class only
+ * adds the priority queue and the deadlines.
+ */
+public class LlmScheduler {
+
+    public enum Priority {
+        INTERACTIVE, BACKGROUND
+    }
+
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    private final String name;
+    private final AdaptiveLimit limit;
+    private final int maxQueued;
+    private final Map<Priority, Duration> deadlines;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TreeSet<Waiter> queue = new TreeSet<>(
+            Comparator.comparing(Waiter::priority).thenComparingLong(Waiter::sequence));
+    private long sequence;
+    private double typicalLatencyNanos;
+
+    private final Map<Priority, Timer> waitTimes = new EnumMap<>(Priority.class);
+    private final Map<Priority, Counter> queueFullRejections = new EnumMap<>(Priority.class);
+    private final Map<Priority, Counter> deadlineRejections = new EnumMap<>(Priority.class);
+    private final Timer successes;
+    private final Timer failures;
+
+    public LlmScheduler(String name, int minConcurrentCalls, int maxConcurrentCalls, Duration latencyThreshold,
+                        int maxQueued, Map<Priority, Duration> deadlines, MeterRegistry meterRegistry) {
+        if (maxQueued < 1) {
+            throw new IllegalArgumentException("The " + name + " queue must hold at least one request but max-queued is " + maxQueued + ".");
+        }
+        this.name = name;
+        this.limit = new AdaptiveLimit(minConcurrentCalls, maxConcurrentCalls, latencyThreshold);
+        this.maxQueued = maxQueued;
+        this.deadlines = Map.copyOf(deadlines);
+
+        Gauge.builder("intellibuy.llm.queue.depth", this, LlmScheduler::queued)
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("intellibuy.llm.in-flight", this, LlmScheduler::inFlight)
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("intellibuy.llm.limit", this, LlmScheduler::currentLimit)
+                .tag("name", name)
+                .register(meterRegistry);
+        for (Priority priority : Priority.values()) {
+            String tag = priority.name().toLowerCase(Locale.ROOT);
+            waitTimes.put(priority, Timer.builder("intellibuy.llm.queue.wait")
+                    .tag("name", name).tag("priority", tag)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+            queueFullRejections.put(priority, rejectionCounter(name, tag, "queue_full", meterRegistry));
+            deadlineRejections.put(priority, rejectionCounter(name, tag, "deadline", meterRegistry));
+        }
+        this.successes = callTimer(name, "success", meterRegistry);
+        this.failures = callTimer(name, "failure", meterRegistry);
+    }
+
+    private static Counter rejectionCounter(String name, String priority, String reason, MeterRegistry meterRegistry) {
+        return Counter.builder("intellibuy.llm.rejected")
+                .tag("name", name).tag("priority", priority).tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private static Timer callTimer(String name, String outcome, MeterRegistry meterRegistry) {
+        return Timer.builder("intellibuy.llm.calls")
+                .tag("name", name).tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public <T> T call(Priority priority, Supplier<T> supplier) {
+        AdaptiveLimit.Permit permit = acquire(priority);
+        try {
+            T result = supplier.get();
+            permit.close();
+            return result;
+        } catch (RuntimeException | Error e) {
+            permit.fail();
+            throw e;
+        }
+    }
+
+    /**
+     * Fails fast with 429 when a request of this priority would be turned away right now, so
+     * callers that cannot report an error once their response has started can check up front.
+     */
+    public void checkAdmission(Priority priority) {
+        lock.lock();
+        try {
+            if (queue.size() >= maxQueued && !(queue.last().priority().compareTo(priority) > 0)) {
+                queueFullRejections.get(priority).increment();
+                throw queueFull();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a permit that must be closed when the call finishes, or failed if it did not
+     * succeed.
+     */
+    public AdaptiveLimit.Permit acquire(Priority priority) {
+        long arrived = System.nanoTime();
+        long deadline = arrived + deadlines.get(priority).toNanos();
+        lock.lock();
+        try {
+            if (queue.isEmpty() && limit.hasCapacity()) {
+                return admit(priority, arrived);
+            }
+            if (queue.size() >= maxQueued) {
+                Waiter worst = queue.last();
+                if (worst.priority().compareTo(priority) <= 0) {
+                    queueFullRejections.get(priority).increment();
+                    throw queueFull();
+                }
+                queue.remove(worst);
+                worst.displaced = true;
+                worst.turn.signal();
+            }
+
+            Waiter waiter = new Waiter(priority, sequence++, lock.newCondition());
+            queue.add(waiter);
+            try {
+                while (true) {
+                    if (waiter.displaced) {
+                        queueFullRejections.get(priority).increment();
+                        throw queueFull();
+                    }
+                    if (queue.first() == waiter && limit.hasCapacity()) {
+                        queue.remove(waiter);
+                        return admit(priority, arrived);
+                    }
+                    long latestStart = deadline - (long) typicalLatencyNanos;
+                    long remaining = latestStart - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.remove(waiter);
+                        deadlineRejections.get(priority).increment();
+                        throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                                name + " cannot answer in time under the current load, try again later.");
+                    }
+                    waiter.turn.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                queue.remove(waiter);
+                Thread.currentThread().interrupt();
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting for " + name);
+            } finally {
+                // a waiter leaving the head of the queue hands its turn on
+                signalHead();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private AdaptiveLimit.Permit admit(Priority priority, long arrived) {
+        boolean saturated = limit.start();
+        long admitted = System.nanoTime();
+        waitTimes.get(priority).record(admitted - arrived, TimeUnit.NANOSECONDS);
+        return new AdaptiveLimit.Permit(this::release, admitted, saturated);
+    }
+
+    private void release(long latencyNanos, boolean success, boolean saturated) {
+        (success ? successes : failures).record(latencyNanos, TimeUnit.NANOSECONDS);
+        lock.lock();
+        try {
+            if (success) {
+                typicalLatencyNanos = typicalLatencyNanos == 0
+                        ? latencyNanos
+                        : typicalLatencyNanos + LATENCY_SMOOTHING * (latencyNanos - typicalLatencyNanos);
+            }
+            limit.finish(latencyNanos, success, saturated);
+            signalHead();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signalHead() {
+        if (!queue.isEmpty() && limit.hasCapacity()) {
+            queue.first().turn.signal();
+        }
+    }
+
+    private ResponseStatusException queueFull() {
+        return new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, name + " has too many queued requests, try again later.");
+    }
+
+    private int currentLimit() {
+        return limit.limit();
+    }
+
+    private int inFlight() {
+        return limit.inFlight();
+    }
+
+    private int queued() {
+        return queue.size();
+    }
+
+    private static final class Waiter {
+
+        private final Priority priority;
+        private final long sequence;
+        private final Condition turn;
+        private boolean displaced;
+
+        private Waiter(Priority priority, long sequence, Condition turn) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.turn = turn;
+        }
+
+        Priority priority() {
+            return priority;
+        }
+
+        long sequence() {
+            return sequence;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.breno.intellibuy.config;
+
+import org.springframework.ai.model.ollama.autoconfigure.OllamaConnectionDetails;
+import org.springframework.ai.ollama.api.OllamaApi;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.reactive.JdkClientHttpConnector;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * HTTP client used by the Ollama API for blocking and streamed calls alike. A single JDK client
+ * keeps its connections alive between calls instead of each builder creating its own, speaks
+ * HTTP/1.1 directly (Ollama has no HTTP/2, so the upgrade attempt is wasted), and bounds connect
+ * and read time. The number of open connections follows the Ollama bulkheads.
+ * <p>
+ * The client is set on the builders of the {@link OllamaApi} only, so other REST and web clients
+ * in the application keep Boot's defaults.
+ */
+@Configuration
+public class OllamaClientConfig {
+
+    @Bean
+    public HttpClient ollamaHttpClient(@Value("${intellibuy.ollama.http.connect-timeout:PT5S}") Duration connectTimeout) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout)
+                .build();
+    }
+
+    @Bean
+    public OllamaApi ollamaApi(
+            OllamaConnectionDetails connectionDetails,
+            ObjectProvider<RestClient.Builder> restClientBuilder,
+            ObjectProvider<WebClient.Builder> webClientBuilder,
+            HttpClient ollamaHttpClient,
+            @Value("${intellibuy.ollama.http.read-timeout:PT120S}") Duration readTimeout) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(ollamaHttpClient);
+        requestFactory.setReadTimeout(readTimeout);
+        JdkClientHttpConnector connector = new JdkClientHttpConnector(ollamaHttpClient);
+        connector.setReadTimeout(readTimeout);
+        // both builders are prototypes, so these settings stay on the Ollama API's copies
+        return OllamaApi.builder()
+                .baseUrl(connectionDetails.getBaseUrl())
+                .restClientBuilder(restClientBuilder.getIfAvailable(RestClient::builder).requestFactory(requestFactory))
+                .webClientBuilder(webClientBuilder.getIfAvailable(WebClient::builder).clientConnector(connector))
+                .build();
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.breno.intellibuy.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.ollama.OllamaChatModel;
+import org.springframework.ai.ollama.OllamaEmbeddingModel;
+import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Loads the embedding and chat models into Ollama before the application reports ready, so the
+ * first requests routed to it after a deploy do not pay the model load. Together with
+ * {@code keep_alive} the models then stay resident. Failures are logged and do not stop startup.
+ * <p>
+ * The warm-up starts in the background once the context is up, alongside the other runners such
+ * as the data loader. This runner is ordered last and waits for it, and Spring Boot only switches
+ * the readiness state to {@code ACCEPTING_TRAFFIC} after all runners have returned.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class OllamaWarmup implements CommandLineRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(OllamaWarmup.class);
+
+    private final OllamaEmbeddingModel embeddingModel;
+    private final OllamaChatModel chatModel;
+    private final LlmScheduler llmScheduler;
+    private final ThreadFactory workerThreadFactory;
+    private final boolean enabled;
+    private final Duration timeout;
+    private volatile CompletableFuture<Void> warmup = CompletableFuture.completedFuture(null);
+    private volatile long deadline;
+
+    public OllamaWarmup(
+            OllamaEmbeddingModel embeddingModel,
+            OllamaChatModel chatModel,
+            LlmScheduler llmScheduler,
+            ThreadFactory workerThreadFactory,
+            @Value("${intellibuy.ollama.warmup.enabled:true}") boolean enabled,
+            @Value("${intellibuy.ollama.warmup.timeout:PT3M}") Duration timeout) {
+        this.embeddingModel = embeddingModel;
+        this.chatModel = chatModel;
+        this.llmScheduler = llmScheduler;
+        this.workerThreadFactory = workerThreadFactory;
+        this.enabled = enabled;
+        this.timeout = timeout;
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        deadline = System.nanoTime() + timeout.toNanos();
+        ExecutorService executor = Executors.newThreadPerTaskExecutor(workerThreadFactory);
+        CompletableFuture<Void> embedding = CompletableFuture.runAsync(
+                () -> warmUp("embedding", () -> embeddingModel.embed("warm-up")), executor);
+        CompletableFuture<Void> chat = CompletableFuture.runAsync(
+                () -> warmUp("chat", () -> llmScheduler.call(LlmScheduler.Priority.BACKGROUND,
+                        () -> chatModel.call(new Prompt("Reply with OK.", OllamaOptions.builder().numPredict(1).build())))),
+                executor);
+        warmup = CompletableFuture.allOf(embedding, chat);
+        executor.shutdown();
+    }
+
+    @Override
+    public void run(String... args) throws InterruptedException {
+        try {
+            warmup.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Ollama warm-up did not finish within {}, reporting ready anyway", timeout);
+        } catch (ExecutionException e) {
+            log.warn("Ollama warm-up failed: {}", e.getCause().getMessage());
+        }
+    }
+
+    private static void warmUp(String model, Runnable call) {
+        long started = System.nanoTime();
+        try {
+            call.run();
+            log.info("Warmed up the Ollama {} model in {} ms", model, (System.nanoTime() - started) / 1_000_000);
+        } catch (RuntimeException e) {
+            log.warn("Could not warm up the Ollama {} model: {}", model, e.getMessage());
+        }
+    }
+
+}
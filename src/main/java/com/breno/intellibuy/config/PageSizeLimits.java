@@ -0,0 +1,29 @@
+package com.breno.intellibuy.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Clamps client supplied page sizes to the configured bounds.
+ */
+@Component
+public class PageSizeLimits {
+
+    private final int defaultSize;
+    private final int maxSize;
+
+    public PageSizeLimits(
+            @Value("${intellibuy.api.page.default-size:50}") int defaultSize,
+            @Value("${intellibuy.api.page.max-size:500}") int maxSize) {
+        this.defaultSize = defaultSize;
+        this.maxSize = maxSize;
+    }
+
+    public int resolve(Integer requested) {
+        if (requested == null || requested <= 0) {
+            return defaultSize;
+        }
+        return Math.min(requested, maxSize);
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.breno.intellibuy.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the purchase sequences past any IDs already present, so databases created while
+ * these tables still used IDENTITY columns do not collide with sequence-generated IDs. Runs
+ * while the context starts, after Hibernate has updated the schema and before the web server
+ * accepts requests.
+ */
+@Component
+public class SequenceInitializer implements InitializingBean {
+
+    private static final int ALLOCATION_SIZE = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param entityManagerFactory not used, but ensures the schema exists before the sequences
+     *                             are aligned
+     */
+    public SequenceInitializer(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        alignSequence("purchases_seq", "purchases");
+        alignSequence("purchase_items_seq", "purchase_items");
+    }
+
+    private void alignSequence(String sequence, String table) {
+        jdbcTemplate.queryForObject(
+                "SELECT setval('" + sequence + "', GREATEST((SELECT last_value FROM " + sequence + "), "
+                        + "(SELECT COALESCE(MAX(id), 0) FROM " + table + ") + " + ALLOCATION_SIZE + "))",
+                Long.class);
+    }
+
+}
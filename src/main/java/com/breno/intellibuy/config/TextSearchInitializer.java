@@ -0,0 +1,55 @@
+package com.breno.intellibuy.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Adds a generated {@code tsvector} column with a GIN index to the vector store table, so the
+ * hybrid retriever can run full-text queries over the same documents it searches by vector.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class TextSearchInitializer implements CommandLineRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(TextSearchInitializer.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String schemaName;
+    private final String tableName;
+    private final String textSearchConfig;
+
+    public TextSearchInitializer(
+            JdbcTemplate jdbcTemplate,
+            @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schemaName,
+            @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName,
+            @Value("${intellibuy.ai.retrieval.hybrid.text-search-config:english}") String textSearchConfig) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.schemaName = schemaName;
+        this.tableName = tableName;
+        this.textSearchConfig = textSearchConfig;
+    }
+
+    @Override
+    public void run(String... args) {
+        if (!textSearchConfig.matches("[a-z_]+")) {
+            throw new IllegalStateException("Invalid text search configuration: " + textSearchConfig);
+        }
+        String table = schemaName + "." + tableName;
+        try {
+            jdbcTemplate.execute("ALTER TABLE " + table + " ADD COLUMN IF NOT EXISTS content_tsv tsvector "
+                    + "GENERATED ALWAYS AS (to_tsvector('" + textSearchConfig + "'::regconfig, coalesce(content, ''))) STORED");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + tableName + "_content_tsv_idx ON " + table
+                    + " USING gin (content_tsv)");
+        } catch (DataAccessException e) {
+            log.warn("Could not set up full-text search on {}, chat retrieval stays vector-only: {}", table, e.getMessage());
+        }
+    }
+
+}
@@ -1,13 +1,22 @@
 package com.breno.intellibuy.controller;
 
+import com.breno.intellibuy.config.PageSizeLimits;
+import com.breno.intellibuy.dto.CursorPage;
+import com.breno.intellibuy.dto.ImportReport;
 import com.breno.intellibuy.model.Customer;
+import com.breno.intellibuy.services.BulkImportService;
 import com.breno.intellibuy.services.CustomerService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
 
 @RestController
 @RequestMapping("/customer")
@@ -16,6 +25,15 @@ public class CustomerController {
     @Autowired
     private CustomerService customerService;
 
+    @Autowired
+    private PageSizeLimits pageSizeLimits;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private BulkImportService bulkImportService;
+
     @PostMapping
     public ResponseEntity<Customer> create(@RequestBody Customer customer) {
         Customer savedCustomer = customerService.save(customer);
@@ -23,11 +41,27 @@ public class CustomerController {
     }
 
     @GetMapping
-    public ResponseEntity<List<Customer>> getAllCustomers() {
-        List<Customer> customers = customerService.getAll();
+    public ResponseEntity<CursorPage<Customer>> getAllCustomers(
+            @RequestParam(defaultValue = "0") Long after,
+            @RequestParam(required = false) Integer limit) {
+        CursorPage<Customer> customers = customerService.getPage(after, pageSizeLimits.resolve(limit));
         return new ResponseEntity<>(customers, HttpStatus.OK);
     }
 
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, "text/csv"})
+    public ResponseEntity<ImportReport> importCustomers(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            InputStream body) throws IOException {
+        ImportReport report = bulkImportService.importCustomers(body, contentType);
+        return new ResponseEntity<>(report, HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamCustomers() {
+        StreamingResponseBody body = NdjsonStreams.of(objectMapper, customerService::streamAll);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Customer> getCustomerById(@PathVariable Long id) {
         return customerService.getById(id)
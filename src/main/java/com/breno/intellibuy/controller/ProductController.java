@@ -1,13 +1,22 @@
 package com.breno.intellibuy.controller;
 
+import com.breno.intellibuy.config.PageSizeLimits;
+import com.breno.intellibuy.dto.CursorPage;
+import com.breno.intellibuy.dto.ImportReport;
 import com.breno.intellibuy.model.Product;
+import com.breno.intellibuy.services.BulkImportService;
 import com.breno.intellibuy.services.ProductService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
 
 @RestController
 @RequestMapping("/product")
@@ -16,6 +25,15 @@ public class ProductController {
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private PageSizeLimits pageSizeLimits;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private BulkImportService bulkImportService;
+
     @PostMapping
     public ResponseEntity<Product> createProduct(@RequestBody Product product) {
         Product savedProduct = productService.save(product);
@@ -23,11 +41,27 @@ public class ProductController {
     }
 
     @GetMapping
-    public ResponseEntity<List<Product>> getAllProducts() {
-        List<Product> products = productService.getAll();
+    public ResponseEntity<CursorPage<Product>> getAllProducts(
+            @RequestParam(defaultValue = "0") Long after,
+            @RequestParam(required = false) Integer limit) {
+        CursorPage<Product> products = productService.getPage(after, pageSizeLimits.resolve(limit));
         return new ResponseEntity<>(products, HttpStatus.OK);
     }
 
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, "text/csv"})
+    public ResponseEntity<ImportReport> importProducts(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            InputStream body) throws IOException {
+        ImportReport report = bulkImportService.importProducts(body, contentType);
+        return new ResponseEntity<>(report, HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamProducts() {
+        StreamingResponseBody body = NdjsonStreams.of(objectMapper, productService::streamAll);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Product> getProductById(@PathVariable Long id) {
         return productService.getById(id)
@@ -1,13 +1,22 @@
 package com.breno.intellibuy.controller;
 
+import com.breno.intellibuy.config.PageSizeLimits;
+import com.breno.intellibuy.dto.CursorPage;
+import com.breno.intellibuy.dto.ImportReport;
 import com.breno.intellibuy.model.Purchase;
+import com.breno.intellibuy.services.BulkImportService;
 import com.breno.intellibuy.services.PurchaseService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
 
 @RestController
 @RequestMapping("/purchase")
@@ -17,6 +26,15 @@ public class PurchaseController {
     @Autowired
     private PurchaseService purchaseService;
 
+    @Autowired
+    private PageSizeLimits pageSizeLimits;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private BulkImportService bulkImportService;
+
     @PostMapping
     public ResponseEntity<Purchase> createPurchase(@RequestBody Purchase purchase) {
         try {
@@ -28,11 +46,31 @@ public class PurchaseController {
     }
 
     @GetMapping
-    public ResponseEntity<List<Purchase>> getAllPurchases() {
-        List<Purchase> purchases = purchaseService.getAll();
+    public ResponseEntity<CursorPage<?>> getAllPurchases(
+            @RequestParam(defaultValue = "0") Long after,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "false") boolean expandItems) {
+        int pageSize = pageSizeLimits.resolve(limit);
+        CursorPage<?> purchases = expandItems
+                ? purchaseService.getDetailedPage(after, pageSize)
+                : purchaseService.getSummaryPage(after, pageSize);
         return new ResponseEntity<>(purchases, HttpStatus.OK);
     }
 
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ImportReport> importPurchases(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            InputStream body) throws IOException {
+        ImportReport report = bulkImportService.importPurchases(body, contentType);
+        return new ResponseEntity<>(report, HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamPurchases() {
+        StreamingResponseBody body = NdjsonStreams.of(objectMapper, purchaseService::streamSummaries);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Purchase> getPurchaseById(@PathVariable Long id) {
         return purchaseService.getById(id)
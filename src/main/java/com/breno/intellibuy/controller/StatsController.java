@@ -0,0 +1,53 @@
+package com.breno.intellibuy.controller;
+
+import com.breno.intellibuy.config.PageSizeLimits;
+import com.breno.intellibuy.dto.ProductSalesSummary;
+import com.breno.intellibuy.model.CustomerStats;
+import com.breno.intellibuy.model.ProductSales;
+import com.breno.intellibuy.services.PurchaseStatsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/stats")
+public class StatsController {
+
+    @Autowired
+    private PurchaseStatsService purchaseStatsService;
+
+    @Autowired
+    private PageSizeLimits pageSizeLimits;
+
+    @GetMapping("/customer/{id}")
+    public ResponseEntity<CustomerStats> getCustomerStats(@PathVariable Long id) {
+        return purchaseStatsService.getCustomerStats(id)
+                .map(stats -> new ResponseEntity<>(stats, HttpStatus.OK))
+                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    @GetMapping("/customer/{id}/products")
+    public ResponseEntity<List<ProductSalesSummary>> getCustomerTopProducts(
+            @PathVariable Long id,
+            @RequestParam(required = false) Integer limit) {
+        List<ProductSalesSummary> products = purchaseStatsService.getTopProductsForCustomer(id, pageSizeLimits.resolve(limit));
+        return new ResponseEntity<>(products, HttpStatus.OK);
+    }
+
+    @GetMapping("/product/{id}")
+    public ResponseEntity<ProductSales> getProductSales(@PathVariable Long id) {
+        return purchaseStatsService.getProductSales(id)
+                .map(sales -> new ResponseEntity<>(sales, HttpStatus.OK))
+                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    @GetMapping("/product/top")
+    public ResponseEntity<List<ProductSalesSummary>> getTopSellingProducts(@RequestParam(required = false) Integer limit) {
+        List<ProductSalesSummary> products = purchaseStatsService.getTopSellingProducts(pageSizeLimits.resolve(limit));
+        return new ResponseEntity<>(products, HttpStatus.OK);
+    }
+
+}
@@ -1,11 +1,13 @@
 package com.breno.intellibuy.controller.ai;
 
 import com.breno.intellibuy.services.ai.DataEmbeddingService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 
 @RestController
 @RequestMapping("/ai/chat")
@@ -26,4 +28,12 @@ public class AIChatController {
         return ResponseEntity.ok(answer);
     }
 
+    @GetMapping(value = "/ask/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<String>> streamAnswer(@RequestParam String question) {
+        if (question == null || question.trim().isEmpty()) {
+            return ResponseEntity.badRequest().body(Flux.just("The question cannot be empty."));
+        }
+        return ResponseEntity.ok(productEmbeddingService.streamAnswer(question));
+    }
+
 }
@@ -0,0 +1,6 @@
+package com.breno.intellibuy.dto;
+
+import java.time.LocalDateTime;
+
+public record ChangeMarker(Long id, LocalDateTime updatedAt) {
+}
@@ -0,0 +1,17 @@
+package com.breno.intellibuy.dto;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One page of a keyset-paginated listing. {@code nextCursor} is the value to pass as
+ * {@code after} to fetch the following page, or {@code null} on the last page.
+ */
+public record CursorPage<T>(List<T> items, Long nextCursor) {
+
+    public static <T> CursorPage<T> of(List<T> items, int limit, Function<T, Long> idOf) {
+        Long nextCursor = items.size() < limit ? null : idOf.apply(items.get(items.size() - 1));
+        return new CursorPage<>(items, nextCursor);
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.breno.intellibuy.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk import. {@code errors} holds at most the configured number of rows;
+ * {@code failed} counts all of them.
+ */
+public record ImportReport(
+        long received,
+        long imported,
+        long failed,
+        List<RowError> errors
+) {
+
+    public record RowError(long line, String message) {
+    }
+
+}
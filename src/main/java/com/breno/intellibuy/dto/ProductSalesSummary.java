@@ -0,0 +1,9 @@
+package com.breno.intellibuy.dto;
+
+public record ProductSalesSummary(
+        Long productId,
+        String productName,
+        Long unitsSold,
+        Long orderCount
+) {
+}
@@ -0,0 +1,13 @@
+package com.breno.intellibuy.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+public record PurchaseSummary(
+        Long id,
+        Long customerId,
+        String customerName,
+        LocalDateTime datePurchase,
+        BigDecimal totalValue
+) {
+}
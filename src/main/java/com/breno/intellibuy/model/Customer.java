@@ -4,12 +4,15 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "customers")
+@Table(name = "customers", indexes = @Index(name = "customers_updated_at_idx", columnList = "updated_at, id"))
 public class Customer {
 
     @Id
@@ -19,4 +22,8 @@ public class Customer {
     private String cpf;
     private String phone;
 
+    @UpdateTimestamp
+    @Column(columnDefinition = "timestamp(6) default now()")
+    private LocalDateTime updatedAt;
+
 }
@@ -0,0 +1,47 @@
+package com.breno.intellibuy.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * How many units of a product a customer has bought, and in how many purchases.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@IdClass(CustomerProductStats.Key.class)
+@Table(name = "customer_product_stats")
+public class CustomerProductStats {
+
+    @Id
+    private Long customerId;
+
+    @Id
+    private Long productId;
+
+    @Column(nullable = false)
+    private Long unitsBought;
+
+    @Column(nullable = false)
+    private Long orderCount;
+
+    private LocalDateTime updatedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+
+        private Long customerId;
+
+        private Long productId;
+
+    }
+
+}
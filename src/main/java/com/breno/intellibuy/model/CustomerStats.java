@@ -0,0 +1,35 @@
+package com.breno.intellibuy.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Purchase totals per customer, kept up to date by {@code PurchaseStatsService} as purchases are
+ * saved, updated and deleted.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "customer_stats")
+public class CustomerStats {
+
+    @Id
+    private Long customerId;
+
+    @Column(nullable = false)
+    private BigDecimal totalSpent;
+
+    @Column(nullable = false)
+    private Long orderCount;
+
+    private LocalDateTime lastPurchaseAt;
+
+    private LocalDateTime updatedAt;
+
+}
@@ -0,0 +1,31 @@
+package com.breno.intellibuy.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "embedding_cache")
+public class EmbeddingCacheEntry {
+
+    @Id
+    private String id;
+
+    private String model;
+
+    private String contentHash;
+
+    @Column(columnDefinition = "bytea")
+    private byte[] embedding;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime lastUsedAt;
+
+}
@@ -0,0 +1,31 @@
+package com.breno.intellibuy.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Row written by a database trigger whenever a product, customer or purchase is deleted, so
+ * deletions made outside the application still reach the vector store.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "entity_deletions")
+public class EntityDeletion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String entityType;
+
+    private Long entityId;
+
+    private LocalDateTime deletedAt;
+
+}
@@ -0,0 +1,24 @@
+package com.breno.intellibuy.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "ingestion_checkpoints")
+public class IngestionCheckpoint {
+
+    @Id
+    private String entityType;
+
+    private Long lastId;
+
+    private LocalDateTime updatedAt;
+
+}
@@ -0,0 +1,26 @@
+package com.breno.intellibuy.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "ingestion_state")
+public class IngestionState {
+
+    @Id
+    private String name;
+
+    private Long vectorStoreVersion;
+
+    private LocalDateTime initialIngestionCompletedAt;
+
+    private LocalDateTime updatedAt;
+
+}
@@ -4,14 +4,16 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = @Index(name = "products_updated_at_idx", columnList = "updated_at, id"))
 public class Product {
 
     @Id
@@ -21,4 +23,8 @@ public class Product {
     private BigDecimal price;
     private String description;
 
+    @UpdateTimestamp
+    @Column(columnDefinition = "timestamp(6) default now()")
+    private LocalDateTime updatedAt;
+
 }
@@ -0,0 +1,31 @@
+package com.breno.intellibuy.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Sales counters per product, kept up to date by {@code PurchaseStatsService}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "product_sales", indexes = @Index(name = "product_sales_units_sold_idx", columnList = "units_sold"))
+public class ProductSales {
+
+    @Id
+    private Long productId;
+
+    @Column(nullable = false)
+    private Long unitsSold;
+
+    @Column(nullable = false)
+    private Long orderCount;
+
+    private LocalDateTime updatedAt;
+
+}
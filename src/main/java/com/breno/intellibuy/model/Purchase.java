@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -13,11 +14,15 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "purchases")
+@Table(name = "purchases", indexes = {
+        @Index(name = "purchases_updated_at_idx", columnList = "updated_at, id"),
+        @Index(name = "purchases_customer_id_idx", columnList = "customer_id")
+})
 public class Purchase {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "purchases_id_generator")
+    @SequenceGenerator(name = "purchases_id_generator", sequenceName = "purchases_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
@@ -31,4 +36,8 @@ public class Purchase {
 
     private BigDecimal totalValue;
 
+    @UpdateTimestamp
+    @Column(columnDefinition = "timestamp(6) default now()")
+    private LocalDateTime updatedAt;
+
 }
@@ -1,9 +1,12 @@
 package com.breno.intellibuy.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Data
 @NoArgsConstructor
@@ -13,9 +16,13 @@ import lombok.NoArgsConstructor;
 public class PurchaseItem {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "purchase_items_id_generator")
+    @SequenceGenerator(name = "purchase_items_id_generator", sequenceName = "purchase_items_seq", allocationSize = 50)
     private Long id;
 
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @ManyToOne
     @JoinColumn(name = "purchase_id")
     private Purchase purchase;
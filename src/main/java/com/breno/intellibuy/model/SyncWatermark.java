@@ -0,0 +1,26 @@
+package com.breno.intellibuy.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "sync_watermarks")
+public class SyncWatermark {
+
+    @Id
+    private String entityType;
+
+    private LocalDateTime changedThrough;
+
+    private Long lastId;
+
+    private LocalDateTime updatedAt;
+
+}
@@ -0,0 +1,21 @@
+package com.breno.intellibuy.repository;
+
+import com.breno.intellibuy.dto.ProductSalesSummary;
+import com.breno.intellibuy.model.CustomerProductStats;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface CustomerProductStatsRepository extends JpaRepository<CustomerProductStats, CustomerProductStats.Key> {
+
+    @Query("select new com.breno.intellibuy.dto.ProductSalesSummary(s.productId, p.name, s.unitsBought, s.orderCount) "
+            + "from CustomerProductStats s join Product p on p.id = s.productId "
+            + "where s.customerId = :customerId order by s.unitsBought desc, s.productId")
+    List<ProductSalesSummary> findTopProducts(@Param("customerId") Long customerId, Limit limit);
+
+}
@@ -1,9 +1,35 @@
 package com.breno.intellibuy.repository;
 
+import com.breno.intellibuy.dto.ChangeMarker;
 import com.breno.intellibuy.model.Customer;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
 @Repository
 public interface CustomerRepository extends JpaRepository<Customer, Long> {
+
+    List<Customer> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true")})
+    @Query("select c from Customer c order by c.id")
+    Stream<Customer> streamAll();
+
+    @Query("select new com.breno.intellibuy.dto.ChangeMarker(c.id, c.updatedAt) from Customer c "
+            + "where (c.updatedAt > :since or (c.updatedAt = :since and c.id > :id)) and c.updatedAt <= :until "
+            + "order by c.updatedAt, c.id")
+    List<ChangeMarker> findChangedAfter(@Param("since") LocalDateTime since, @Param("id") Long id,
+                                        @Param("until") LocalDateTime until, Limit limit);
+
 }
@@ -0,0 +1,9 @@
+package com.breno.intellibuy.repository;
+
+import com.breno.intellibuy.model.CustomerStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CustomerStatsRepository extends JpaRepository<CustomerStats, Long> {
+}
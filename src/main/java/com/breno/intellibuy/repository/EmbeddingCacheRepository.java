@@ -0,0 +1,9 @@
+package com.breno.intellibuy.repository;
+
+import com.breno.intellibuy.model.EmbeddingCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface EmbeddingCacheRepository extends JpaRepository<EmbeddingCacheEntry, String> {
+}
@@ -0,0 +1,15 @@
+package com.breno.intellibuy.repository;
+
+import com.breno.intellibuy.model.EntityDeletion;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface EntityDeletionRepository extends JpaRepository<EntityDeletion, Long> {
+
+    List<EntityDeletion> findByOrderByIdAsc(Limit limit);
+
+}
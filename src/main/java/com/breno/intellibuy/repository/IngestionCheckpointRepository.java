@@ -0,0 +1,9 @@
+package com.breno.intellibuy.repository;
+
+import com.breno.intellibuy.model.IngestionCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface IngestionCheckpointRepository extends JpaRepository<IngestionCheckpoint, String> {
+}
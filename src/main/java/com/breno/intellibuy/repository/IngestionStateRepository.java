@@ -0,0 +1,31 @@
+package com.breno.intellibuy.repository;
+
+import com.breno.intellibuy.model.IngestionState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface IngestionStateRepository extends JpaRepository<IngestionState, String> {
+
+    @Modifying
+    @Query(value = "insert into ingestion_state (name, vector_store_version, updated_at) values (:name, 0, now()) "
+            + "on conflict (name) do nothing", nativeQuery = true)
+    void insertIfMissing(@Param("name") String name);
+
+    @Modifying
+    @Query("update IngestionState s set s.vectorStoreVersion = s.vectorStoreVersion + 1, s.updatedAt = :now where s.name = :name")
+    void incrementVectorStoreVersion(@Param("name") String name, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("update IngestionState s set s.initialIngestionCompletedAt = :now, s.updatedAt = :now where s.name = :name")
+    void markInitialIngestionCompleted(@Param("name") String name, @Param("now") LocalDateTime now);
+
+    @Query("select s.vectorStoreVersion from IngestionState s where s.name = :name")
+    Long findVectorStoreVersion(@Param("name") String name);
+
+}
@@ -1,9 +1,35 @@
 package com.breno.intellibuy.repository;
 
+import com.breno.intellibuy.dto.ChangeMarker;
 import com.breno.intellibuy.model.Product;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
+
+    List<Product> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true")})
+    @Query("select p from Product p order by p.id")
+    Stream<Product> streamAll();
+
+    @Query("select new com.breno.intellibuy.dto.ChangeMarker(p.id, p.updatedAt) from Product p "
+            + "where (p.updatedAt > :since or (p.updatedAt = :since and p.id > :id)) and p.updatedAt <= :until "
+            + "order by p.updatedAt, p.id")
+    List<ChangeMarker> findChangedAfter(@Param("since") LocalDateTime since, @Param("id") Long id,
+                                        @Param("until") LocalDateTime until, Limit limit);
+
 }
@@ -0,0 +1,20 @@
+package com.breno.intellibuy.repository;
+
+import com.breno.intellibuy.dto.ProductSalesSummary;
+import com.breno.intellibuy.model.ProductSales;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ProductSalesRepository extends JpaRepository<ProductSales, Long> {
+
+    @Query("select new com.breno.intellibuy.dto.ProductSalesSummary(s.productId, p.name, s.unitsSold, s.orderCount) "
+            + "from ProductSales s join Product p on p.id = s.productId "
+            + "where s.unitsSold > 0 order by s.unitsSold desc, s.productId")
+    List<ProductSalesSummary> findTopSelling(Limit limit);
+
+}
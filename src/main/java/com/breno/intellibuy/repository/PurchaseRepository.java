@@ -1,9 +1,50 @@
 package com.breno.intellibuy.repository;
 
+import com.breno.intellibuy.dto.ChangeMarker;
+import com.breno.intellibuy.dto.PurchaseSummary;
 import com.breno.intellibuy.model.Purchase;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+
 @Repository
 public interface PurchaseRepository extends JpaRepository<Purchase, Long> {
+
+    @Query("select p.id from Purchase p where p.id > :id order by p.id")
+    List<Long> findIdsGreaterThan(@Param("id") Long id, Limit limit);
+
+    @EntityGraph(attributePaths = {"customer", "purchaseItem", "purchaseItem.product"})
+    List<Purchase> findByIdInOrderByIdAsc(Collection<Long> ids);
+
+    @EntityGraph(attributePaths = {"customer", "purchaseItem", "purchaseItem.product"})
+    Optional<Purchase> findWithItemsById(Long id);
+
+    @Query("select new com.breno.intellibuy.dto.PurchaseSummary(p.id, c.id, c.name, p.datePurchase, p.totalValue) "
+            + "from Purchase p left join p.customer c where p.id > :id order by p.id")
+    List<PurchaseSummary> findSummariesGreaterThan(@Param("id") Long id, Limit limit);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select new com.breno.intellibuy.dto.PurchaseSummary(p.id, c.id, c.name, p.datePurchase, p.totalValue) "
+            + "from Purchase p left join p.customer c order by p.id")
+    Stream<PurchaseSummary> streamSummaries();
+
+    @Query("select new com.breno.intellibuy.dto.ChangeMarker(p.id, p.updatedAt) from Purchase p "
+            + "where (p.updatedAt > :since or (p.updatedAt = :since and p.id > :id)) and p.updatedAt <= :until "
+            + "order by p.updatedAt, p.id")
+    List<ChangeMarker> findChangedAfter(@Param("since") LocalDateTime since, @Param("id") Long id,
+                                        @Param("until") LocalDateTime until, Limit limit);
+
 }
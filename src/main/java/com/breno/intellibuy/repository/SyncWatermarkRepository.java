@@ -0,0 +1,9 @@
+package com.breno.intellibuy.repository;
+
+import com.breno.intellibuy.model.SyncWatermark;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SyncWatermarkRepository extends JpaRepository<SyncWatermark, String> {
+}
@@ -0,0 +1,362 @@
+package com.breno.intellibuy.services;
+
+import com.breno.intellibuy.dto.ImportReport;
+import com.breno.intellibuy.model.Customer;
+import com.breno.intellibuy.model.Product;
+import com.breno.intellibuy.model.Purchase;
+import com.breno.intellibuy.model.PurchaseItem;
+import com.breno.intellibuy.repository.PurchaseRepository;
+import com.breno.intellibuy.services.ai.IncrementalReconciler;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.observation.annotation.Observed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Imports products, customers and purchases from NDJSON or CSV request bodies. Rows are read
+ * one at a time and written in chunks: products and customers with batched JDBC inserts,
+ * purchases with batched JPA inserts. A chunk the database rejects is retried row by row so
+ * only the offending rows fail. Embedding is left to the {@link IncrementalReconciler}, which
+ * is asked to run once the import is done.
+ */
+@Observed(name = "intellibuy.service")
+@Service
+public class BulkImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkImportService.class);
+
+    public static final MediaType TEXT_CSV = new MediaType("text", "csv");
+
+    private final EntityCache<Product> productCache;
+    private final EntityCache<Customer> customerCache;
+    private final PurchaseRepository purchaseRepository;
+    private final PurchaseStatsService purchaseStatsService;
+    private final IncrementalReconciler incrementalReconciler;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final int maxReportedErrors;
+
+    public BulkImportService(
+            EntityCache<Product> productCache,
+            EntityCache<Customer> customerCache,
+            PurchaseRepository purchaseRepository,
+            PurchaseStatsService purchaseStatsService,
+            IncrementalReconciler incrementalReconciler,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            ObjectMapper objectMapper,
+            @Value("${intellibuy.import.batch-size:1000}") int batchSize,
+            @Value("${intellibuy.import.max-reported-errors:1000}") int maxReportedErrors) {
+        this.productCache = productCache;
+        this.customerCache = customerCache;
+        this.purchaseRepository = purchaseRepository;
+        this.purchaseStatsService = purchaseStatsService;
+        this.incrementalReconciler = incrementalReconciler;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    public ImportReport importProducts(InputStream body, MediaType contentType) throws IOException {
+        return importRows("product", rows(body, contentType, Product.class), this::validProducts, products ->
+                jdbcTemplate.batchUpdate("insert into products (name, price, description) values (?, ?, ?)",
+                        products.stream()
+                                .map(product -> new Object[]{product.getName(), product.getPrice(), product.getDescription()})
+                                .toList()));
+    }
+
+    public ImportReport importCustomers(InputStream body, MediaType contentType) throws IOException {
+        return importRows("customer", rows(body, contentType, Customer.class), this::validCustomers, customers ->
+                jdbcTemplate.batchUpdate("insert into customers (name, cpf, phone) values (?, ?, ?)",
+                        customers.stream()
+                                .map(customer -> new Object[]{customer.getName(), customer.getCpf(), customer.getPhone()})
+                                .toList()));
+    }
+
+    public ImportReport importPurchases(InputStream body, MediaType contentType) throws IOException {
+        if (TEXT_CSV.isCompatibleWith(contentType)) {
+            throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "Purchases can only be imported as NDJSON.");
+        }
+        return importRows("purchase", rows(body, contentType, Purchase.class), this::validPurchases, purchases ->
+                transactionTemplate.executeWithoutResult(status -> {
+                    for (Purchase purchase : purchases) {
+                        purchase.setId(null);
+                        purchase.getPurchaseItem().forEach(item -> item.setId(null));
+                    }
+                    purchaseRepository.saveAll(purchases);
+                    purchaseStatsService.recordAll(purchases.stream().map(PurchaseStatsService.Contribution::of).toList());
+                }));
+    }
+
+    private <T> ImportReport importRows(String entityType, RowSource<T> source, Validator<T> validator, Writer<T> writer) throws IOException {
+        long started = System.nanoTime();
+        Report report = new Report(maxReportedErrors);
+        List<Row<T>> chunk = new ArrayList<>(batchSize);
+
+        Row<T> row;
+        while ((row = source.next()) != null) {
+            report.received++;
+            if (row.error() != null) {
+                report.fail(row.line(), row.error());
+                continue;
+            }
+            chunk.add(row);
+            if (chunk.size() == batchSize) {
+                write(validator.validate(chunk, report), writer, report);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            write(validator.validate(chunk, report), writer, report);
+        }
+
+        if (report.imported > 0) {
+            incrementalReconciler.requestRun();
+        }
+        log.info("Imported {} of {} {} row(s) in {} ms, {} failed", report.imported, report.received, entityType,
+                (System.nanoTime() - started) / 1_000_000, report.failed);
+        return new ImportReport(report.received, report.imported, report.failed, report.errors);
+    }
+
+    private <T> void write(List<Row<T>> rows, Writer<T> writer, Report report) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            writer.write(rows.stream().map(Row::value).toList());
+            report.imported += rows.size();
+        } catch (DataAccessException | TransactionException e) {
+            for (Row<T> row : rows) {
+                try {
+                    writer.write(List.of(row.value()));
+                    report.imported++;
+                } catch (DataAccessException | TransactionException rowError) {
+                    report.fail(row.line(), NestedExceptionUtils.getMostSpecificCause(rowError).getMessage());
+                }
+            }
+        }
+    }
+
+    private List<Row<Product>> validProducts(List<Row<Product>> rows, Report report) {
+        List<Row<Product>> valid = new ArrayList<>(rows.size());
+        for (Row<Product> row : rows) {
+            Product product = row.value();
+            if (product.getName() == null || product.getName().isBlank()) {
+                report.fail(row.line(), "Product name is required.");
+            } else if (product.getPrice() == null || product.getPrice().signum() < 0) {
+                report.fail(row.line(), "Product price must be zero or more.");
+            } else {
+                valid.add(row);
+            }
+        }
+        return valid;
+    }
+
+    private List<Row<Customer>> validCustomers(List<Row<Customer>> rows, Report report) {
+        List<Row<Customer>> valid = new ArrayList<>(rows.size());
+        for (Row<Customer> row : rows) {
+            if (row.value().getName() == null || row.value().getName().isBlank()) {
+                report.fail(row.line(), "Customer name is required.");
+            } else {
+                valid.add(row);
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Resolves the customers and products of a whole chunk with one query each, then links
+     * every purchase to them and computes its total, as {@code PurchaseService.save} does.
+     */
+    private List<Row<Purchase>> validPurchases(List<Row<Purchase>> rows, Report report) {
+        Set<Long> customerIds = new HashSet<>();
+        Set<Long> productIds = new HashSet<>();
+        for (Row<Purchase> row : rows) {
+            Purchase purchase = row.value();
+            if (purchase.getCustomer() != null && purchase.getCustomer().getId() != null) {
+                customerIds.add(purchase.getCustomer().getId());
+            }
+            if (purchase.getPurchaseItem() != null) {
+                for (PurchaseItem item : purchase.getPurchaseItem()) {
+                    if (item.getProduct() != null && item.getProduct().getId() != null) {
+                        productIds.add(item.getProduct().getId());
+                    }
+                }
+            }
+        }
+        Map<Long, Customer> customers = customerCache.getAll(customerIds);
+        Map<Long, Product> products = productCache.getAll(productIds);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Row<Purchase>> valid = new ArrayList<>(rows.size());
+        for (Row<Purchase> row : rows) {
+            String problem = attach(row.value(), customers, products, now);
+            if (problem != null) {
+                report.fail(row.line(), problem);
+            } else {
+                valid.add(row);
+            }
+        }
+        return valid;
+    }
+
+    private static String attach(Purchase purchase, Map<Long, Customer> customers, Map<Long, Product> products, LocalDateTime now) {
+        Customer customer = purchase.getCustomer() == null ? null : customers.get(purchase.getCustomer().getId());
+        if (customer == null) {
+            return "Customer not found!";
+        }
+        if (purchase.getPurchaseItem() == null || purchase.getPurchaseItem().isEmpty()) {
+            return "A purchase needs at least one item.";
+        }
+
+        BigDecimal totalValue = new BigDecimal("0.0");
+        for (PurchaseItem item : purchase.getPurchaseItem()) {
+            Product product = item.getProduct() == null ? null : products.get(item.getProduct().getId());
+            if (product == null) {
+                return "Product not found: " + (item.getProduct() == null ? null : item.getProduct().getId());
+            }
+            if (item.getQuantity() == null || item.getQuantity() <= 0) {
+                return "Quantity must be positive for product " + product.getId() + ".";
+            }
+            item.setProduct(product);
+            item.setPurchase(purchase);
+            totalValue = totalValue.add(product.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+        }
+        purchase.setCustomer(customer);
+        purchase.setDatePurchase(now);
+        purchase.setTotalValue(totalValue);
+        return null;
+    }
+
+    private <T> RowSource<T> rows(InputStream body, MediaType contentType, Class<T> type) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        return TEXT_CSV.isCompatibleWith(contentType) ? csvRows(reader, type) : ndjsonRows(reader, type);
+    }
+
+    private <T> RowSource<T> ndjsonRows(BufferedReader reader, Class<T> type) {
+        long[] lineNumber = {0};
+        return () -> {
+            String line;
+            do {
+                line = reader.readLine();
+                lineNumber[0]++;
+            } while (line != null && line.isBlank());
+            if (line == null) {
+                return null;
+            }
+            try {
+                return new Row<>(lineNumber[0], objectMapper.readValue(line, type), null);
+            } catch (JsonProcessingException e) {
+                return new Row<>(lineNumber[0], null, e.getOriginalMessage());
+            }
+        };
+    }
+
+    private <T> RowSource<T> csvRows(BufferedReader reader, Class<T> type) throws IOException {
+        CsvRecordReader csv = new CsvRecordReader(reader);
+        List<String> header = csv.read();
+        if (header == null) {
+            return () -> null;
+        }
+        List<String> columns = header.stream().map(String::trim).toList();
+        boolean[] ended = {false};
+        return () -> {
+            if (ended[0]) {
+                return null;
+            }
+            List<String> record;
+            try {
+                record = csv.read();
+            } catch (IllegalArgumentException e) {
+                ended[0] = true;
+                return new Row<>(csv.recordLine(), null, e.getMessage());
+            }
+            if (record == null) {
+                return null;
+            }
+            if (record.size() != columns.size()) {
+                return new Row<>(csv.recordLine(), null,
+                        "Expected " + columns.size() + " fields but found " + record.size() + ".");
+            }
+            Map<String, String> fields = new LinkedHashMap<>();
+            for (int i = 0; i < columns.size(); i++) {
+                String value = record.get(i);
+                fields.put(columns.get(i), value.isEmpty() ? null : value);
+            }
+            try {
+                return new Row<>(csv.recordLine(), objectMapper.convertValue(fields, type), null);
+            } catch (IllegalArgumentException e) {
+                return new Row<>(csv.recordLine(), null, e.getMessage().lines().findFirst().orElse("Invalid row."));
+            }
+        };
+    }
+
+    private record Row<T>(long line, T value, String error) {
+    }
+
+    @FunctionalInterface
+    private interface RowSource<T> {
+        Row<T> next() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Validator<T> {
+        List<Row<T>> validate(List<Row<T>> rows, Report report);
+    }
+
+    @FunctionalInterface
+    private interface Writer<T> {
+        void write(List<T> values);
+    }
+
+    private static final class Report {
+
+        private final int maxErrors;
+        private final List<ImportReport.RowError> errors = new ArrayList<>();
+        private long received;
+        private long imported;
+        private long failed;
+
+        Report(int maxErrors) {
+            this.maxErrors = maxErrors;
+        }
+
+        void fail(long line, String message) {
+            failed++;
+            if (errors.size() < maxErrors) {
+                errors.add(new ImportReport.RowError(line, message));
+            }
+        }
+    }
+
+}
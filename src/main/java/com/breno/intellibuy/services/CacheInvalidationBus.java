@@ -0,0 +1,168 @@
+package com.breno.intellibuy.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps the entity caches of several instances coherent over Postgres {@code LISTEN/NOTIFY}.
+ * Every write publishes {@code <node>:<cache>:<id>} on the channel, and a listener on a dedicated
+ * connection evicts the entries other nodes wrote. Notifications sent inside a transaction are
+ * only delivered on commit. After the listener reconnects, all caches are cleared because
+ * notifications may have been missed meanwhile.
+ */
+@Component
+public class CacheInvalidationBus {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheInvalidationBus.class);
+
+    private static final int POLL_TIMEOUT_MILLIS = 10_000;
+    private static final Duration RECONNECT_DELAY = Duration.ofSeconds(5);
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, EntityCache<?>> caches = new ConcurrentHashMap<>();
+    private final JdbcTemplate jdbcTemplate;
+    private final ThreadFactory threadFactory;
+    private final boolean enabled;
+    private final String channel;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final Counter published;
+    private final Counter received;
+    private volatile boolean running;
+    private Thread listener;
+
+    public CacheInvalidationBus(
+            JdbcTemplate jdbcTemplate,
+            ThreadFactory workerThreadFactory,
+            MeterRegistry meterRegistry,
+            @Value("${intellibuy.cache.invalidation.enabled:true}") boolean enabled,
+            @Value("${intellibuy.cache.invalidation.channel:intellibuy_cache}") String channel,
+            @Value("${spring.datasource.url}") String url,
+            @Value("${spring.datasource.username}") String username,
+            @Value("${spring.datasource.password}") String password) {
+        if (!channel.matches("[a-z_]+")) {
+            throw new IllegalStateException("Invalid cache invalidation channel: " + channel);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.threadFactory = workerThreadFactory;
+        this.enabled = enabled;
+        this.channel = channel;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.published = Counter.builder("intellibuy.cache.invalidations")
+                .tag("direction", "published")
+                .register(meterRegistry);
+        this.received = Counter.builder("intellibuy.cache.invalidations")
+                .tag("direction", "received")
+                .register(meterRegistry);
+    }
+
+    void register(EntityCache<?> cache) {
+        caches.put(cache.name(), cache);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        listener = threadFactory.newThread(this::listen);
+        listener.setName("cache-invalidation-listener");
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+            listener.join(POLL_TIMEOUT_MILLIS);
+        }
+    }
+
+    void publish(String cacheName, Long id) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            jdbcTemplate.queryForObject("select pg_notify(?, ?)", Object.class, channel, nodeId + ":" + cacheName + ":" + id);
+            published.increment();
+        } catch (DataAccessException e) {
+            log.warn("Could not publish invalidation of {} {}, other instances keep it until it expires: {}", cacheName, id, e.getMessage());
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("listen " + channel);
+                }
+                caches.values().forEach(EntityCache::invalidateLocally);
+                log.info("Listening for cache invalidations on channel {}", channel);
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            handle(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Cache invalidation listener disconnected, retrying in {}: {}", RECONNECT_DELAY, e.getMessage());
+                try {
+                    Thread.sleep(RECONNECT_DELAY);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void handle(String payload) {
+        String[] parts = payload.split(":", 3);
+        if (parts.length != 3 || parts[0].equals(nodeId)) {
+            return;
+        }
+        EntityCache<?> cache = caches.get(parts[1]);
+        if (cache == null) {
+            return;
+        }
+        try {
+            cache.evictLocally(Long.valueOf(parts[2]));
+            received.increment();
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed cache invalidation: {}", payload);
+        }
+    }
+
+}
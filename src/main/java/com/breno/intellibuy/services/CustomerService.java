@@ -1,26 +1,40 @@
 package com.breno.intellibuy.services;
 
+import com.breno.intellibuy.dto.CursorPage;
 import com.breno.intellibuy.model.Customer;
 import com.breno.intellibuy.repository.CustomerRepository;
 import com.breno.intellibuy.services.ai.DataEmbeddingService;
+import io.micrometer.observation.annotation.Observed;
+import jakarta.persistence.EntityManager;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+@Observed(name = "intellibuy.service")
 @Service
 public class CustomerService {
 
     private final CustomerRepository customerRepository;
+    private final EntityCache<Customer> customerCache;
     private final DataEmbeddingService dataEmbeddingService;
+    private final EntityManager entityManager;
 
-    public CustomerService(CustomerRepository customerRepository, DataEmbeddingService dataEmbeddingService) {
+    public CustomerService(CustomerRepository customerRepository, EntityCache<Customer> customerCache,
+                           DataEmbeddingService dataEmbeddingService, EntityManager entityManager) {
         this.customerRepository = customerRepository;
+        this.customerCache = customerCache;
         this.dataEmbeddingService = dataEmbeddingService;
+        this.entityManager = entityManager;
     }
 
     public Customer save(Customer customer) {
         Customer savedCustomer = customerRepository.save(customer);
+        customerCache.put(savedCustomer);
         dataEmbeddingService.embedCustomer(savedCustomer);
         return savedCustomer;
     }
@@ -29,12 +43,33 @@ public class CustomerService {
         return customerRepository.findAll();
     }
 
+    public boolean isEmpty() {
+        return customerRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(1)).isEmpty();
+    }
+
+    public CursorPage<Customer> getPage(Long after, int limit) {
+        List<Customer> customers = customerRepository.findByIdGreaterThanOrderByIdAsc(after, Limit.of(limit));
+        return CursorPage.of(customers, limit, Customer::getId);
+    }
+
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<Customer> consumer) {
+        try (Stream<Customer> customers = customerRepository.streamAll()) {
+            customers.forEach(customer -> {
+                consumer.accept(customer);
+                entityManager.detach(customer);
+            });
+        }
+    }
+
     public Optional<Customer> getById(Long id) {
-        return customerRepository.findById(id);
+        return customerCache.get(id);
     }
 
     public void delete(Long id) {
         customerRepository.deleteById(id);
+        customerCache.evict(id);
+        dataEmbeddingService.removeCustomer(id);
     }
 
 }
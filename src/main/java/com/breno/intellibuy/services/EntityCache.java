@@ -0,0 +1,106 @@
+package com.breno.intellibuy.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bounded, expiring read-through cache of entities by ID. Entities are stored and handed out as
+ * detached copies, so a caller modifying the instance it got never changes the cached one.
+ * Writes go through {@link #put} and {@link #evict}, which also tell the other instances to
+ * drop their copy.
+ */
+public class EntityCache<T> {
+
+    private final String name;
+    private final Cache<Long, T> cache;
+    private final Function<Long, Optional<T>> loader;
+    private final Function<Collection<Long>, List<T>> bulkLoader;
+    private final Function<T, Long> idOf;
+    private final UnaryOperator<T> copier;
+    private final CacheInvalidationBus invalidationBus;
+
+    public EntityCache(String name, long maxSize, Duration ttl,
+                       Function<Long, Optional<T>> loader,
+                       Function<Collection<Long>, List<T>> bulkLoader,
+                       Function<T, Long> idOf,
+                       UnaryOperator<T> copier,
+                       CacheInvalidationBus invalidationBus,
+                       MeterRegistry meterRegistry) {
+        this.name = name;
+        this.loader = loader;
+        this.bulkLoader = bulkLoader;
+        this.idOf = idOf;
+        this.copier = copier;
+        this.invalidationBus = invalidationBus;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+        invalidationBus.register(this);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Optional<T> get(Long id) {
+        T cached = cache.get(id, key -> loader.apply(key).map(copier).orElse(null));
+        return Optional.ofNullable(cached).map(copier);
+    }
+
+    /**
+     * Returns the entities found for the given IDs, loading the missing ones with a single query.
+     */
+    public Map<Long, T> getAll(Collection<Long> ids) {
+        Map<Long, T> cached = cache.getAll(ids, missing -> {
+            Map<Long, T> loaded = new HashMap<>();
+            for (T entity : bulkLoader.apply(List.copyOf(missing))) {
+                loaded.put(idOf.apply(entity), copier.apply(entity));
+            }
+            return loaded;
+        });
+        Map<Long, T> copies = new HashMap<>(cached.size() * 2);
+        cached.forEach((id, entity) -> copies.put(id, copier.apply(entity)));
+        return copies;
+    }
+
+    /**
+     * Stores an entity that was just written, and invalidates it on the other instances.
+     */
+    public void put(T entity) {
+        Long id = idOf.apply(entity);
+        cache.put(id, copier.apply(entity));
+        invalidationBus.publish(name, id);
+    }
+
+    /**
+     * Drops an entity that was deleted or changed outside this cache, here and on the other
+     * instances.
+     */
+    public void evict(Long id) {
+        cache.invalidate(id);
+        invalidationBus.publish(name, id);
+    }
+
+    void evictLocally(Long id) {
+        cache.invalidate(id);
+    }
+
+    void invalidateLocally() {
+        cache.invalidateAll();
+    }
+
+}
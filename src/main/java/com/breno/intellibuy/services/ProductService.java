@@ -1,26 +1,40 @@
 package com.breno.intellibuy.services;
 
+import com.breno.intellibuy.dto.CursorPage;
 import com.breno.intellibuy.model.Product;
 import com.breno.intellibuy.repository.ProductRepository;
 import com.breno.intellibuy.services.ai.DataEmbeddingService;
+import io.micrometer.observation.annotation.Observed;
+import jakarta.persistence.EntityManager;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+@Observed(name = "intellibuy.service")
 @Service
 public class ProductService {
 
     private final ProductRepository productRepository;
+    private final EntityCache<Product> productCache;
     private final DataEmbeddingService dataEmbeddingService;
+    private final EntityManager entityManager;
 
-    public ProductService(ProductRepository productRepository, DataEmbeddingService dataEmbeddingService) {
+    public ProductService(ProductRepository productRepository, EntityCache<Product> productCache,
+                          DataEmbeddingService dataEmbeddingService, EntityManager entityManager) {
         this.productRepository = productRepository;
+        this.productCache = productCache;
         this.dataEmbeddingService = dataEmbeddingService;
+        this.entityManager = entityManager;
     }
 
     public Product save(Product product) {
         Product savedProduct = productRepository.save(product);
+        productCache.put(savedProduct);
         dataEmbeddingService.embedProduct(savedProduct);
         return savedProduct;
     }
@@ -29,12 +43,33 @@ public class ProductService {
         return productRepository.findAll();
     }
 
+    public boolean isEmpty() {
+        return productRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(1)).isEmpty();
+    }
+
+    public CursorPage<Product> getPage(Long after, int limit) {
+        List<Product> products = productRepository.findByIdGreaterThanOrderByIdAsc(after, Limit.of(limit));
+        return CursorPage.of(products, limit, Product::getId);
+    }
+
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<Product> consumer) {
+        try (Stream<Product> products = productRepository.streamAll()) {
+            products.forEach(product -> {
+                consumer.accept(product);
+                entityManager.detach(product);
+            });
+        }
+    }
+
     public Optional<Product> getById(Long id) {
-        return productRepository.findById(id);
+        return productCache.get(id);
     }
 
     public void delete(Long id) {
         productRepository.deleteById(id);
+        productCache.evict(id);
+        dataEmbeddingService.removeProduct(id);
     }
 
 }
@@ -1,14 +1,16 @@
 package com.breno.intellibuy.services;
 
+import com.breno.intellibuy.dto.CursorPage;
+import com.breno.intellibuy.dto.PurchaseSummary;
 import com.breno.intellibuy.model.Customer;
 import com.breno.intellibuy.model.Product;
 import com.breno.intellibuy.model.Purchase;
 import com.breno.intellibuy.model.PurchaseItem;
-import com.breno.intellibuy.repository.CustomerRepository;
-import com.breno.intellibuy.repository.ProductRepository;
 import com.breno.intellibuy.repository.PurchaseRepository;
 import com.breno.intellibuy.services.ai.DataEmbeddingService;
+import io.micrometer.observation.annotation.Observed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -17,53 +19,54 @@ import org.springframework.web.server.ResponseStatusException;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+@Observed(name = "intellibuy.service")
 @Service
 public class PurchaseService {
 
     private final PurchaseRepository purchaseRepository;
-    private final CustomerRepository customerRepository;
-    private final ProductRepository productRepository;
+    private final EntityCache<Customer> customerCache;
+    private final EntityCache<Product> productCache;
+    private final PurchaseStatsService purchaseStatsService;
     private final DataEmbeddingService dataEmbeddingService;
 
     public PurchaseService(
             PurchaseRepository purchaseRepository,
-            CustomerRepository customerRepository,
-            ProductRepository productRepository,
+            EntityCache<Customer> customerCache,
+            EntityCache<Product> productCache,
+            PurchaseStatsService purchaseStatsService,
             DataEmbeddingService dataEmbeddingService
     ) {
         this.purchaseRepository = purchaseRepository;
-        this.customerRepository = customerRepository;
-        this.productRepository = productRepository;
+        this.customerCache = customerCache;
+        this.productCache = productCache;
+        this.purchaseStatsService = purchaseStatsService;
         this.dataEmbeddingService = dataEmbeddingService;
     }
 
     @Transactional
     public Purchase save(Purchase purchase) {
-        Customer customer = customerRepository.findById(purchase.getCustomer().getId())
+        Customer customer = customerCache.get(purchase.getCustomer().getId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Customer not found!"));
         purchase.setCustomer(customer);
 
-        BigDecimal totalValue = new BigDecimal("0.0");
-
-        if (purchase.getPurchaseItem() != null && !purchase.getPurchaseItem().isEmpty()) {
-            for (PurchaseItem item : purchase.getPurchaseItem()) {
-                Product product = productRepository.findById(item.getProduct().getId())
-                        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Product not found: " + item.getProduct().getId()));
-
-                item.setProduct(product);
-                item.setPurchase(purchase);
-                totalValue = totalValue.add(product.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
-            }
-        } else {
+        if (purchase.getPurchaseItem() == null || purchase.getPurchaseItem().isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A purchase only or more item.");
         }
 
+        BigDecimal totalValue = attachItems(purchase, purchase.getPurchaseItem());
+
         purchase.setDatePurchase(LocalDateTime.now());
         purchase.setTotalValue(totalValue);
 
         Purchase savedPurchase = purchaseRepository.save(purchase);
+        purchaseStatsService.record(PurchaseStatsService.Contribution.of(savedPurchase));
         dataEmbeddingService.embedPurchase(savedPurchase);
         return savedPurchase;
     }
@@ -72,43 +75,90 @@ public class PurchaseService {
         return purchaseRepository.findAll();
     }
 
+    public boolean isEmpty() {
+        return purchaseRepository.findIdsGreaterThan(0L, Limit.of(1)).isEmpty();
+    }
+
+    public CursorPage<PurchaseSummary> getSummaryPage(Long after, int limit) {
+        List<PurchaseSummary> purchases = purchaseRepository.findSummariesGreaterThan(after, Limit.of(limit));
+        return CursorPage.of(purchases, limit, PurchaseSummary::id);
+    }
+
+    public CursorPage<Purchase> getDetailedPage(Long after, int limit) {
+        List<Long> ids = purchaseRepository.findIdsGreaterThan(after, Limit.of(limit));
+        List<Purchase> purchases = ids.isEmpty() ? List.of() : purchaseRepository.findByIdInOrderByIdAsc(ids);
+        return CursorPage.of(purchases, limit, Purchase::getId);
+    }
+
+    @Transactional(readOnly = true)
+    public void streamSummaries(Consumer<PurchaseSummary> consumer) {
+        try (Stream<PurchaseSummary> purchases = purchaseRepository.streamSummaries()) {
+            purchases.forEach(consumer);
+        }
+    }
+
     public Optional<Purchase> getById(Long id) {
-        return purchaseRepository.findById(id);
+        return purchaseRepository.findWithItemsById(id);
     }
 
+    @Transactional
     public void delete(Long id) {
-        purchaseRepository.deleteById(id);
+        purchaseRepository.findWithItemsById(id).ifPresent(purchase -> {
+            purchaseStatsService.retract(PurchaseStatsService.Contribution.of(purchase));
+            purchaseRepository.delete(purchase);
+        });
+        dataEmbeddingService.removePurchase(id);
     }
 
     @Transactional
     public Purchase update(Long id, Purchase updatePurchase) {
-        return purchaseRepository.findById(id)
+        return purchaseRepository.findWithItemsById(id)
                 .map(existsPurchase -> {
+                    PurchaseStatsService.Contribution previous = PurchaseStatsService.Contribution.of(existsPurchase);
+
                     if (updatePurchase.getCustomer() != null && updatePurchase.getCustomer().getId() != null) {
-                        Customer customer = customerRepository.findById(updatePurchase.getCustomer().getId())
+                        Customer customer = customerCache.get(updatePurchase.getCustomer().getId())
                                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Customer not found!"));
                         existsPurchase.setCustomer(customer);
                     }
 
                     if (updatePurchase.getPurchaseItem() != null) {
                         existsPurchase.getPurchaseItem().clear();
-                        BigDecimal newTotalValue = new BigDecimal("0.0");
-                        for (PurchaseItem newItem : updatePurchase.getPurchaseItem()) {
-                            Product product = productRepository.findById(newItem.getProduct().getId())
-                                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Product not found: " + newItem.getProduct().getId()));
-                            newItem.setProduct(product);
-                            newItem.setPurchase(existsPurchase);
-                            existsPurchase.getPurchaseItem().add(newItem);
-                            newTotalValue = newTotalValue.add(product.getPrice().multiply(BigDecimal.valueOf(newItem.getQuantity())));
-                        }
+                        BigDecimal newTotalValue = attachItems(existsPurchase, updatePurchase.getPurchaseItem());
+                        existsPurchase.getPurchaseItem().addAll(updatePurchase.getPurchaseItem());
                         existsPurchase.setTotalValue(newTotalValue);
                     }
 
                     Purchase savedPurchase = purchaseRepository.save(existsPurchase);
+                    purchaseStatsService.retract(previous);
+                    purchaseStatsService.record(PurchaseStatsService.Contribution.of(savedPurchase));
                     dataEmbeddingService.embedPurchase(savedPurchase);
                     return savedPurchase;
                 })
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Purchase not found!"));
     }
 
+    /**
+     * Resolves the products of all items from the cache, loading the missing ones with a single
+     * query, links each item to the purchase and returns the purchase total.
+     */
+    private BigDecimal attachItems(Purchase purchase, List<PurchaseItem> items) {
+        Set<Long> productIds = items.stream()
+                .map(item -> item.getProduct().getId())
+                .collect(Collectors.toSet());
+        Map<Long, Product> products = productCache.getAll(productIds);
+
+        BigDecimal totalValue = new BigDecimal("0.0");
+        for (PurchaseItem item : items) {
+            Product product = products.get(item.getProduct().getId());
+            if (product == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Product not found: " + item.getProduct().getId());
+            }
+            item.setProduct(product);
+            item.setPurchase(purchase);
+            totalValue = totalValue.add(product.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+        }
+        return totalValue;
+    }
+
 }
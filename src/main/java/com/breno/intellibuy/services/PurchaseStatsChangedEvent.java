@@ -0,0 +1,18 @@
+package com.breno.intellibuy.services;
+
+import java.util.Set;
+
+/**
+ * Published when purchase aggregates change, with the customers and products whose rows moved.
+ * {@code null} sets mean every aggregate may have changed, as after a rebuild.
+ */
+public record PurchaseStatsChangedEvent(Set<Long> customerIds, Set<Long> productIds) {
+
+    public static PurchaseStatsChangedEvent everything() {
+        return new PurchaseStatsChangedEvent(null, null);
+    }
+
+    public boolean isKnown() {
+        return customerIds != null && productIds != null;
+    }
+}
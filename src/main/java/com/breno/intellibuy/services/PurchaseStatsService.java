@@ -0,0 +1,323 @@
+package com.breno.intellibuy.services;
+
+import com.breno.intellibuy.dto.ProductSalesSummary;
+import com.breno.intellibuy.model.CustomerStats;
+import com.breno.intellibuy.model.ProductSales;
+import com.breno.intellibuy.model.Purchase;
+import com.breno.intellibuy.model.PurchaseItem;
+import com.breno.intellibuy.repository.CustomerProductStatsRepository;
+import com.breno.intellibuy.repository.CustomerStatsRepository;
+import com.breno.intellibuy.repository.ProductSalesRepository;
+import io.micrometer.observation.annotation.Observed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains the purchase read model: per-customer totals, per-product sales counters and
+ * per-customer product counts. Each purchase write adds or retracts its contribution with a
+ * few upserts in the caller's transaction, so the aggregates never need the purchase graph.
+ * Every change publishes a {@link PurchaseStatsChangedEvent} naming the rows it touched.
+ */
+@Observed(name = "intellibuy.service")
+@Service
+public class PurchaseStatsService {
+
+    private static final Logger log = LoggerFactory.getLogger(PurchaseStatsService.class);
+
+    private static final String ADD_CUSTOMER = """
+            insert into customer_stats (customer_id, total_spent, order_count, last_purchase_at, updated_at)
+            values (?, ?, ?, ?, localtimestamp)
+            on conflict (customer_id) do update set
+                total_spent = customer_stats.total_spent + excluded.total_spent,
+                order_count = customer_stats.order_count + excluded.order_count,
+                last_purchase_at = greatest(customer_stats.last_purchase_at, excluded.last_purchase_at),
+                updated_at = excluded.updated_at""";
+
+    private static final String RETRACT_CUSTOMER = """
+            update customer_stats set
+                total_spent = total_spent - ?,
+                order_count = order_count - 1,
+                last_purchase_at = (select max(p.date_purchase) from purchases p
+                                    where p.customer_id = customer_stats.customer_id and p.id <> ?),
+                updated_at = localtimestamp
+            where customer_id = ?""";
+
+    private static final String ADD_PRODUCT = """
+            insert into product_sales (product_id, units_sold, order_count, updated_at)
+            values (?, ?, ?, localtimestamp)
+            on conflict (product_id) do update set
+                units_sold = product_sales.units_sold + excluded.units_sold,
+                order_count = product_sales.order_count + excluded.order_count,
+                updated_at = excluded.updated_at""";
+
+    private static final String RETRACT_PRODUCT = """
+            update product_sales set units_sold = units_sold - ?, order_count = order_count - 1, updated_at = localtimestamp
+            where product_id = ?""";
+
+    private static final String ADD_CUSTOMER_PRODUCT = """
+            insert into customer_product_stats (customer_id, product_id, units_bought, order_count, updated_at)
+            values (?, ?, ?, ?, localtimestamp)
+            on conflict (customer_id, product_id) do update set
+                units_bought = customer_product_stats.units_bought + excluded.units_bought,
+                order_count = customer_product_stats.order_count + excluded.order_count,
+                updated_at = excluded.updated_at""";
+
+    private static final String RETRACT_CUSTOMER_PRODUCT = """
+            update customer_product_stats set units_bought = units_bought - ?, order_count = order_count - 1,
+                updated_at = localtimestamp
+            where customer_id = ? and product_id = ?""";
+
+    private final CustomerStatsRepository customerStatsRepository;
+    private final ProductSalesRepository productSalesRepository;
+    private final CustomerProductStatsRepository customerProductStatsRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int contextTopProducts;
+
+    public PurchaseStatsService(
+            CustomerStatsRepository customerStatsRepository,
+            ProductSalesRepository productSalesRepository,
+            CustomerProductStatsRepository customerProductStatsRepository,
+            JdbcTemplate jdbcTemplate,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${intellibuy.stats.context-top-products:3}") int contextTopProducts) {
+        this.customerStatsRepository = customerStatsRepository;
+        this.productSalesRepository = productSalesRepository;
+        this.customerProductStatsRepository = customerProductStatsRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.contextTopProducts = contextTopProducts;
+    }
+
+    @Transactional
+    public void record(Contribution contribution) {
+        recordAll(List.of(contribution));
+    }
+
+    /**
+     * Adds purchases to the aggregates. Contributions are summed per row first, so each
+     * aggregate row is written once, and rows are upserted in key order so concurrent
+     * writers lock them in the same order.
+     */
+    @Transactional
+    public void recordAll(Collection<Contribution> contributions) {
+        SortedMap<Long, CustomerDelta> customers = new TreeMap<>();
+        SortedMap<Long, SalesDelta> products = new TreeMap<>();
+        SortedMap<Long, SortedMap<Long, SalesDelta>> customerProducts = new TreeMap<>();
+        for (Contribution contribution : contributions) {
+            contribution.unitsByProduct().forEach((productId, units) ->
+                    products.merge(productId, new SalesDelta(units, 1), SalesDelta::plus));
+            if (contribution.customerId() == null) {
+                continue;
+            }
+            customers.merge(contribution.customerId(),
+                    new CustomerDelta(contribution.totalValue(), 1, contribution.purchasedAt()), CustomerDelta::plus);
+            SortedMap<Long, SalesDelta> bought = customerProducts.computeIfAbsent(contribution.customerId(), id -> new TreeMap<>());
+            contribution.unitsByProduct().forEach((productId, units) ->
+                    bought.merge(productId, new SalesDelta(units, 1), SalesDelta::plus));
+        }
+
+        jdbcTemplate.batchUpdate(ADD_CUSTOMER, customers.entrySet().stream()
+                .map(customer -> new Object[]{customer.getKey(), customer.getValue().spent(),
+                        customer.getValue().orders(), customer.getValue().lastPurchaseAt()})
+                .toList());
+        jdbcTemplate.batchUpdate(ADD_PRODUCT, products.entrySet().stream()
+                .map(product -> new Object[]{product.getKey(), product.getValue().units(), product.getValue().orders()})
+                .toList());
+        List<Object[]> customerProductRows = new ArrayList<>();
+        customerProducts.forEach((customerId, bought) -> bought.forEach((productId, sales) ->
+                customerProductRows.add(new Object[]{customerId, productId, sales.units(), sales.orders()})));
+        jdbcTemplate.batchUpdate(ADD_CUSTOMER_PRODUCT, customerProductRows);
+        eventPublisher.publishEvent(new PurchaseStatsChangedEvent(Set.copyOf(customers.keySet()), Set.copyOf(products.keySet())));
+    }
+
+    /**
+     * Takes a purchase back out of the aggregates. The customer's last purchase date is
+     * recomputed without it, since a maximum cannot be decremented.
+     */
+    @Transactional
+    public void retract(Contribution contribution) {
+        if (contribution.customerId() != null) {
+            jdbcTemplate.update(RETRACT_CUSTOMER, contribution.totalValue(), contribution.purchaseId(), contribution.customerId());
+        }
+        jdbcTemplate.batchUpdate(RETRACT_PRODUCT, contribution.unitsByProduct().entrySet().stream()
+                .map(units -> new Object[]{units.getValue(), units.getKey()})
+                .toList());
+        if (contribution.customerId() != null) {
+            jdbcTemplate.batchUpdate(RETRACT_CUSTOMER_PRODUCT, contribution.unitsByProduct().entrySet().stream()
+                    .map(units -> new Object[]{units.getValue(), contribution.customerId(), units.getKey()})
+                    .toList());
+            jdbcTemplate.update("delete from customer_product_stats where customer_id = ? and order_count <= 0",
+                    contribution.customerId());
+        }
+        Set<Long> customerIds = new HashSet<>();
+        if (contribution.customerId() != null) {
+            customerIds.add(contribution.customerId());
+        }
+        eventPublisher.publishEvent(new PurchaseStatsChangedEvent(customerIds, Set.copyOf(contribution.unitsByProduct().keySet())));
+    }
+
+    /**
+     * Recomputes every aggregate from the purchase tables.
+     */
+    @Transactional
+    public void rebuild() {
+        jdbcTemplate.update("delete from customer_stats");
+        jdbcTemplate.update("delete from product_sales");
+        jdbcTemplate.update("delete from customer_product_stats");
+        jdbcTemplate.update("""
+                insert into customer_stats (customer_id, total_spent, order_count, last_purchase_at, updated_at)
+                select customer_id, coalesce(sum(total_value), 0), count(*), max(date_purchase), localtimestamp
+                from purchases where customer_id is not null group by customer_id""");
+        jdbcTemplate.update("""
+                insert into product_sales (product_id, units_sold, order_count, updated_at)
+                select product_id, sum(quantity), count(distinct purchase_id), localtimestamp
+                from purchase_items where product_id is not null group by product_id""");
+        jdbcTemplate.update("""
+                insert into customer_product_stats (customer_id, product_id, units_bought, order_count, updated_at)
+                select p.customer_id, i.product_id, sum(i.quantity), count(distinct i.purchase_id), localtimestamp
+                from purchase_items i join purchases p on p.id = i.purchase_id
+                where p.customer_id is not null and i.product_id is not null
+                group by p.customer_id, i.product_id""");
+        eventPublisher.publishEvent(PurchaseStatsChangedEvent.everything());
+    }
+
+    /**
+     * Builds the aggregates for purchases that predate the read model.
+     */
+    public void rebuildIfMissing() {
+        Boolean missing = jdbcTemplate.queryForObject(
+                "select exists (select 1 from purchases) and not exists (select 1 from customer_stats)", Boolean.class);
+        if (Boolean.TRUE.equals(missing)) {
+            log.info("Building purchase aggregates from existing purchases...");
+            rebuild();
+        }
+    }
+
+    public Optional<CustomerStats> getCustomerStats(Long customerId) {
+        return customerStatsRepository.findById(customerId);
+    }
+
+    public Optional<ProductSales> getProductSales(Long productId) {
+        return productSalesRepository.findById(productId);
+    }
+
+    public List<ProductSalesSummary> getTopSellingProducts(int limit) {
+        return productSalesRepository.findTopSelling(Limit.of(limit));
+    }
+
+    public List<ProductSalesSummary> getTopProductsForCustomer(Long customerId, int limit) {
+        return customerProductStatsRepository.findTopProducts(customerId, Limit.of(limit));
+    }
+
+    /**
+     * Renders the aggregates of the given customers and products, plus the best sellers when
+     * asked, as short lines for the chat prompt. Returns an empty string when there is nothing.
+     */
+    public String describe(Map<Long, String> customers, Map<Long, String> products, boolean includeTopSelling) {
+        List<String> lines = new ArrayList<>();
+
+        Map<Long, CustomerStats> customerStats = customers.isEmpty() ? Map.of()
+                : customerStatsRepository.findAllById(customers.keySet()).stream()
+                .collect(Collectors.toMap(CustomerStats::getCustomerId, stats -> stats));
+        customers.forEach((customerId, name) -> {
+            CustomerStats stats = customerStats.get(customerId);
+            if (stats == null || stats.getOrderCount() <= 0) {
+                return;
+            }
+            String line = String.format("Customer %s has made %d purchase(s), spending $%.2f in total%s.",
+                    name, stats.getOrderCount(), stats.getTotalSpent(),
+                    stats.getLastPurchaseAt() == null ? "" : ", last on " + stats.getLastPurchaseAt().toLocalDate());
+            List<ProductSalesSummary> favourites = getTopProductsForCustomer(customerId, contextTopProducts);
+            if (!favourites.isEmpty()) {
+                line += " Bought most: " + favourites.stream()
+                        .map(product -> String.format("%d unit(s) of %s", product.unitsSold(), product.productName()))
+                        .collect(Collectors.joining(", ")) + ".";
+            }
+            lines.add(line);
+        });
+
+        if (!products.isEmpty()) {
+            productSalesRepository.findAllById(products.keySet()).forEach(sales -> lines.add(String.format(
+                    "Product %s has sold %d unit(s) across %d purchase(s).",
+                    products.get(sales.getProductId()), sales.getUnitsSold(), sales.getOrderCount())));
+        }
+
+        if (includeTopSelling) {
+            List<ProductSalesSummary> topSelling = getTopSellingProducts(contextTopProducts);
+            if (!topSelling.isEmpty()) {
+                lines.add("Best-selling products: " + topSelling.stream()
+                        .map(product -> String.format("%s (%d unit(s))", product.productName(), product.unitsSold()))
+                        .collect(Collectors.joining(", ")) + ".");
+            }
+        }
+
+        return lines.isEmpty() ? "" : "Purchase statistics:\n" + String.join("\n", lines);
+    }
+
+    private record CustomerDelta(BigDecimal spent, int orders, LocalDateTime lastPurchaseAt) {
+
+        CustomerDelta plus(CustomerDelta other) {
+            LocalDateTime last = lastPurchaseAt == null || (other.lastPurchaseAt != null && other.lastPurchaseAt.isAfter(lastPurchaseAt))
+                    ? other.lastPurchaseAt
+                    : lastPurchaseAt;
+            return new CustomerDelta(spent.add(other.spent), orders + other.orders, last);
+        }
+    }
+
+    private record SalesDelta(long units, int orders) {
+
+        SalesDelta plus(SalesDelta other) {
+            return new SalesDelta(units + other.units, orders + other.orders);
+        }
+    }
+
+    /**
+     * What a single purchase adds to the aggregates. Captured before a purchase is changed or
+     * deleted, so the old values can be retracted.
+     */
+    public record Contribution(
+            Long purchaseId,
+            Long customerId,
+            BigDecimal totalValue,
+            LocalDateTime purchasedAt,
+            SortedMap<Long, Integer> unitsByProduct) {
+
+        public static Contribution of(Purchase purchase) {
+            SortedMap<Long, Integer> unitsByProduct = new TreeMap<>();
+            if (purchase.getPurchaseItem() != null) {
+                for (PurchaseItem item : purchase.getPurchaseItem()) {
+                    if (item.getProduct() != null && item.getProduct().getId() != null) {
+                        unitsByProduct.merge(item.getProduct().getId(), item.getQuantity(), Integer::sum);
+                    }
+                }
+            }
+            return new Contribution(
+                    purchase.getId(),
+                    purchase.getCustomer() == null ? null : purchase.getCustomer().getId(),
+                    purchase.getTotalValue() == null ? BigDecimal.ZERO : purchase.getTotalValue(),
+                    purchase.getDatePurchase(),
+                    unitsByProduct);
+        }
+    }
+
+}
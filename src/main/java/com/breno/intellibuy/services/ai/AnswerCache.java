@@ -0,0 +1,370 @@
+package com.breno.intellibuy.services.ai;
+
+import com.breno.intellibuy.services.PurchaseStatsChangedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Two-level cache of generated answers. The exact tier matches on normalized question text;
+ * the semantic tier reuses an answer whose question embedding lies within a cosine distance
+ * of the new one. Embeddings barely separate "customer 42" from "customer 43" or "under $50"
+ * from "under $500", so a semantic match also needs both questions to route to the same
+ * retrieval plan and to mention the same numbers. Semantic hits are not copied into the exact
+ * tier.
+ * <p>
+ * Each answer records what it was built from: the documents in its context, the customers and
+ * products whose purchase statistics it quoted, and, for answers that depend on the whole
+ * collection (rankings, or no match at all), the document types searched. A change evicts only
+ * the answers it touches. New documents that would merely have ranked into an existing answer
+ * do not evict it; the TTL bounds how long such an answer is served.
+ */
+@Component
+public class AnswerCache {
+
+    private final EmbeddingModel embeddingModel;
+    private final boolean enabled;
+    private final boolean semanticEnabled;
+    private final double maxDistance;
+    private final int maxSemanticEntries;
+    private final Cache<String, CachedAnswer> exactTier;
+    private final Deque<SemanticEntry> semanticTier = new ArrayDeque<>();
+    private final ReadWriteLock semanticLock = new ReentrantReadWriteLock();
+    private final AtomicLong generation = new AtomicLong();
+    private final Deque<Invalidation> recentInvalidations = new ArrayDeque<>();
+
+    private final Counter exactHits;
+    private final Counter semanticHits;
+    private final Counter misses;
+    private final Counter savedMillis;
+    private final Counter evictions;
+
+    private static final int MAX_TRACKED_INVALIDATIONS = 1024;
+    private static final Pattern NUMBER = Pattern.compile("\\d+(?:[.,]\\d+)?");
+
+    private final QueryIntentRouter queryIntentRouter;
+
+    public AnswerCache(
+            EmbeddingModel embeddingModel,
+            QueryIntentRouter queryIntentRouter,
+            MeterRegistry meterRegistry,
+            @Value("${intellibuy.ai.answer-cache.enabled:true}") boolean enabled,
+            @Value("${intellibuy.ai.answer-cache.max-size:10000}") long maxSize,
+            @Value("${intellibuy.ai.answer-cache.ttl:PT1H}") Duration ttl,
+            @Value("${intellibuy.ai.answer-cache.semantic.enabled:true}") boolean semanticEnabled,
+            @Value("${intellibuy.ai.answer-cache.semantic.max-distance:0.05}") double maxDistance,
+            @Value("${intellibuy.ai.answer-cache.semantic.max-entries:1000}") int maxSemanticEntries) {
+        this.embeddingModel = embeddingModel;
+        this.queryIntentRouter = queryIntentRouter;
+        this.enabled = enabled;
+        this.semanticEnabled = semanticEnabled;
+        this.maxDistance = maxDistance;
+        this.maxSemanticEntries = maxSemanticEntries;
+        this.exactTier = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+
+        this.exactHits = Counter.builder("intellibuy.ai.answer.cache")
+                .tag("tier", "exact").tag("result", "hit")
+                .register(meterRegistry);
+        this.semanticHits = Counter.builder("intellibuy.ai.answer.cache")
+                .tag("tier", "semantic").tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("intellibuy.ai.answer.cache")
+                .tag("tier", "none").tag("result", "miss")
+                .register(meterRegistry);
+        this.savedMillis = Counter.builder("intellibuy.ai.answer.cache.saved")
+                .baseUnit("milliseconds")
+                .description("Generation time avoided by serving cached answers")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("intellibuy.ai.answer.cache.evictions")
+                .description("Cached answers dropped because data they were built from changed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Checks only the exact tier, which needs no embedding call, and returns the cached answer or
+     * {@code null}.
+     */
+    public String lookupExact(String question) {
+        return enabled ? exactAnswer(normalize(question)) : null;
+    }
+
+    public Lookup lookup(String question) {
+        long currentGeneration = generation.get();
+        String key = normalize(question);
+        if (!enabled) {
+            return new Lookup(key, null, null, currentGeneration);
+        }
+
+        String exact = exactAnswer(key);
+        if (exact != null) {
+            return new Lookup(key, null, exact, currentGeneration);
+        }
+
+        float[] embedding = null;
+        if (semanticEnabled) {
+            embedding = normalizeVector(embeddingModel.embed(question));
+            CachedAnswer similar = findSimilar(embedding, signature(key));
+            if (similar != null) {
+                semanticHits.increment();
+                savedMillis.increment(similar.generationMillis());
+                return new Lookup(key, embedding, similar.answer(), currentGeneration);
+            }
+        }
+
+        misses.increment();
+        return new Lookup(key, embedding, null, currentGeneration);
+    }
+
+    private String exactAnswer(String key) {
+        CachedAnswer exact = exactTier.getIfPresent(key);
+        if (exact == null) {
+            return null;
+        }
+        exactHits.increment();
+        savedMillis.increment(exact.generationMillis());
+        return exact.answer();
+    }
+
+    /**
+     * Caches an answer generated after {@code lookup} missed. The answer is stored first and then
+     * checked against the invalidations since the lookup, so a change that lands while the answer
+     * is being generated either sees the entry or is seen by this check.
+     */
+    public void put(Lookup lookup, String answer, long generationMillis, Dependencies dependencies) {
+        if (!enabled) {
+            return;
+        }
+        CachedAnswer cached = new CachedAnswer(answer, generationMillis, dependencies);
+        exactTier.put(lookup.key(), cached);
+        SemanticEntry semantic = null;
+        if (lookup.embedding() != null) {
+            semantic = new SemanticEntry(lookup.embedding(), signature(lookup.key()), cached);
+            semanticLock.writeLock().lock();
+            try {
+                semanticTier.addFirst(semantic);
+                while (semanticTier.size() > maxSemanticEntries) {
+                    semanticTier.removeLast();
+                }
+            } finally {
+                semanticLock.writeLock().unlock();
+            }
+        }
+
+        if (invalidatedSince(lookup.generation(), dependencies)) {
+            exactTier.asMap().remove(lookup.key(), cached);
+            if (semantic != null) {
+                SemanticEntry stale = semantic;
+                semanticLock.writeLock().lock();
+                try {
+                    semanticTier.removeIf(entry -> entry == stale);
+                } finally {
+                    semanticLock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    @EventListener
+    public void onVectorStoreChanged(VectorStoreChangedEvent event) {
+        if (!event.isKnown()) {
+            invalidateAll();
+            return;
+        }
+        invalidate(dependencies -> intersects(dependencies.documentIds(), event.documentIds())
+                || intersects(dependencies.types(), event.types()));
+    }
+
+    /**
+     * Runs after the purchase write commits, so a regenerated answer cannot read the old totals.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPurchaseStatsChanged(PurchaseStatsChangedEvent event) {
+        if (!event.isKnown()) {
+            invalidate(Dependencies::usesStatistics);
+            return;
+        }
+        invalidate(dependencies -> dependencies.topSelling()
+                || intersects(dependencies.customerIds(), event.customerIds())
+                || intersects(dependencies.productIds(), event.productIds()));
+    }
+
+    public void invalidateAll() {
+        invalidate(dependencies -> true);
+    }
+
+    private void invalidate(Predicate<Dependencies> affected) {
+        synchronized (recentInvalidations) {
+            recentInvalidations.addLast(new Invalidation(generation.incrementAndGet(), affected));
+            while (recentInvalidations.size() > MAX_TRACKED_INVALIDATIONS) {
+                recentInvalidations.removeFirst();
+            }
+        }
+        int removed = 0;
+        for (Map.Entry<String, CachedAnswer> entry : exactTier.asMap().entrySet()) {
+            if (affected.test(entry.getValue().dependencies()) && exactTier.asMap().remove(entry.getKey(), entry.getValue())) {
+                removed++;
+            }
+        }
+        semanticLock.writeLock().lock();
+        try {
+            semanticTier.removeIf(entry -> affected.test(entry.answer().dependencies()));
+        } finally {
+            semanticLock.writeLock().unlock();
+        }
+        evictions.increment(removed);
+    }
+
+    private boolean invalidatedSince(long lookupGeneration, Dependencies dependencies) {
+        synchronized (recentInvalidations) {
+            if (generation.get() == lookupGeneration) {
+                return false;
+            }
+            Invalidation oldest = recentInvalidations.peekFirst();
+            if (oldest == null || oldest.generation() > lookupGeneration + 1) {
+                // too many changes to tell what happened in between
+                return true;
+            }
+            for (Invalidation invalidation : recentInvalidations) {
+                if (invalidation.generation() > lookupGeneration && invalidation.affected().test(dependencies)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static <T> boolean intersects(Set<T> cached, Collection<T> changed) {
+        if (cached.isEmpty() || changed.isEmpty()) {
+            return false;
+        }
+        for (T item : changed) {
+            if (cached.contains(item)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String normalize(String question) {
+        String normalized = question.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        return normalized.replaceAll("[?!.\\s]+$", "");
+    }
+
+    /**
+     * What must match, besides the embedding, for two questions to share an answer.
+     */
+    private QuestionSignature signature(String key) {
+        QueryIntentRouter.RetrievalPlan plan = queryIntentRouter.route(key);
+        List<String> numbers = new ArrayList<>();
+        Matcher number = NUMBER.matcher(key);
+        while (number.find()) {
+            numbers.add(number.group().replace(',', '.'));
+        }
+        return new QuestionSignature(plan.types(), plan.filter(), plan.documentIds(), plan.ranking(), numbers);
+    }
+
+    private CachedAnswer findSimilar(float[] embedding, QuestionSignature signature) {
+        semanticLock.readLock().lock();
+        try {
+            CachedAnswer best = null;
+            double bestDistance = maxDistance;
+            for (SemanticEntry entry : semanticTier) {
+                if (!entry.signature().equals(signature)) {
+                    continue;
+                }
+                double distance = 1.0 - dot(embedding, entry.embedding());
+                if (distance <= bestDistance) {
+                    bestDistance = distance;
+                    best = entry.answer();
+                }
+            }
+            return best;
+        } finally {
+            semanticLock.readLock().unlock();
+        }
+    }
+
+    private static float[] normalizeVector(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    public record Lookup(String key, float[] embedding, String answer, long generation) {
+
+        public boolean isHit() {
+            return answer != null;
+        }
+    }
+
+    /**
+     * What a generated answer was built from.
+     *
+     * @param topSelling whether the answer quoted the best sellers, which any purchase can change
+     */
+    public record Dependencies(Set<String> documentIds, Set<Long> customerIds, Set<Long> productIds,
+                               Set<String> types, boolean topSelling) {
+
+        public Dependencies {
+            documentIds = Set.copyOf(documentIds);
+            customerIds = Set.copyOf(customerIds);
+            productIds = Set.copyOf(productIds);
+            types = Set.copyOf(types);
+        }
+
+        boolean usesStatistics() {
+            return topSelling || !customerIds.isEmpty() || !productIds.isEmpty();
+        }
+    }
+
+    private record CachedAnswer(String answer, long generationMillis, Dependencies dependencies) {
+    }
+
+    private record SemanticEntry(float[] embedding, QuestionSignature signature, CachedAnswer answer) {
+    }
+
+    private record QuestionSignature(Set<String> types, Filter.Expression filter, List<String> documentIds,
+                                     boolean ranking, List<String> numbers) {
+    }
+
+    private record Invalidation(long generation, Predicate<Dependencies> affected) {
+    }
+
+}
@@ -0,0 +1,296 @@
+package com.breno.intellibuy.services.ai;
+
+import com.breno.intellibuy.config.Bulkhead;
+import com.breno.intellibuy.model.EmbeddingCacheEntry;
+import com.breno.intellibuy.repository.EmbeddingCacheRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.ollama.OllamaEmbeddingModel;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedding model that remembers vectors by (model, SHA-256 of text). Lookups go to a bounded
+ * in-memory tier first, then to the {@code embedding_cache} table, and only misses reach Ollama.
+ * Single-text calls, i.e. chat questions, that miss the in-memory tier are micro-batched so
+ * concurrent questions share one model call. Rows of other models, and rows not read for longer
+ * than the retention period, are pruned from the table periodically.
+ */
+@Primary
+@Component
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingEmbeddingModel.class);
+
+    private static final String INSERT_ENTRY = """
+            insert into embedding_cache (id, model, content_hash, embedding, created_at, last_used_at)
+            values (?, ?, ?, ?, ?, ?)
+            on conflict (id) do nothing""";
+
+    private static final String TOUCH_ENTRY = "update embedding_cache set last_used_at = ? where id = ?";
+
+    private static final String PRUNE_ENTRIES = """
+            delete from embedding_cache
+            where model <> ? or coalesce(last_used_at, created_at) < ?""";
+
+    // last_used_at only needs to be accurate to well within the retention period
+    private static final Duration TOUCH_INTERVAL = Duration.ofDays(1);
+
+    private final EmbeddingModel delegate;
+    private final Bulkhead embeddingBulkhead;
+    private final EmbeddingCacheRepository embeddingCacheRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final String modelName;
+    private final Duration retention;
+    private final AtomicLong persistentSize = new AtomicLong();
+    private final Cache<String, float[]> memoryCache;
+    private final Counter persistentHits;
+    private final Counter persistentMisses;
+    private final QueryEmbeddingBatcher queryBatcher;
+
+    public CachingEmbeddingModel(
+            OllamaEmbeddingModel delegate,
+            @Qualifier("ollamaEmbeddingBulkhead") Bulkhead embeddingBulkhead,
+            EmbeddingCacheRepository embeddingCacheRepository,
+            JdbcTemplate jdbcTemplate,
+            MeterRegistry meterRegistry,
+            ThreadFactory workerThreadFactory,
+            @Value("${spring.ai.ollama.embedding.options.model}") String modelName,
+            @Value("${intellibuy.embedding.cache.max-size:50000}") long maxSize,
+            @Value("${intellibuy.embedding.cache.retention:P30D}") Duration retention,
+            @Value("${intellibuy.embedding.query-batch.enabled:true}") boolean queryBatchEnabled,
+            @Value("${intellibuy.embedding.query-batch.max-size:16}") int queryBatchSize,
+            @Value("${intellibuy.embedding.query-batch.linger-ms:5}") long queryBatchLingerMillis,
+            @Value("${intellibuy.embedding.query-batch.max-concurrent:4}") int queryBatchMaxConcurrent,
+            @Value("${intellibuy.embedding.query-batch.max-wait:PT30S}") Duration queryBatchMaxWait) {
+        this.delegate = delegate;
+        this.embeddingBulkhead = embeddingBulkhead;
+        this.embeddingCacheRepository = embeddingCacheRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.modelName = modelName;
+        this.retention = retention;
+        this.memoryCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, memoryCache, "embedding.memory");
+        this.persistentHits = Counter.builder("intellibuy.embedding.cache.persistent")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.persistentMisses = Counter.builder("intellibuy.embedding.cache.persistent")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("intellibuy.embedding.cache.persistent.size", persistentSize, AtomicLong::get)
+                .description("Rows in the embedding_cache table as of the last prune")
+                .register(meterRegistry);
+        this.queryBatcher = queryBatchEnabled
+                ? new QueryEmbeddingBatcher(this::embedUncached, workerThreadFactory, meterRegistry,
+                        1000, queryBatchSize, queryBatchLingerMillis,
+                        queryBatchMaxConcurrent, queryBatchMaxWait)
+                : null;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (queryBatcher != null) {
+            queryBatcher.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (queryBatcher != null) {
+            queryBatcher.stop();
+        }
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        float[][] vectors = new float[texts.size()][];
+        Map<String, List<Integer>> missingKeys = new LinkedHashMap<>();
+        Map<String, String> textByKey = new LinkedHashMap<>();
+
+        for (int i = 0; i < texts.size(); i++) {
+            String key = cacheKey(texts.get(i));
+            float[] cached = memoryCache.getIfPresent(key);
+            if (cached != null) {
+                vectors[i] = cached;
+            } else {
+                missingKeys.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+                textByKey.putIfAbsent(key, texts.get(i));
+            }
+        }
+
+        if (!missingKeys.isEmpty()) {
+            LocalDateTime now = LocalDateTime.now();
+            List<Object[]> touched = new ArrayList<>();
+            for (EmbeddingCacheEntry entry : embeddingCacheRepository.findAllById(missingKeys.keySet())) {
+                float[] vector = toVector(entry.getEmbedding());
+                memoryCache.put(entry.getId(), vector);
+                for (int index : missingKeys.remove(entry.getId())) {
+                    vectors[index] = vector;
+                }
+                persistentHits.increment();
+                LocalDateTime lastUsed = entry.getLastUsedAt() != null ? entry.getLastUsedAt() : entry.getCreatedAt();
+                if (lastUsed == null || lastUsed.isBefore(now.minus(TOUCH_INTERVAL))) {
+                    touched.add(new Object[]{now, entry.getId()});
+                }
+            }
+            touch(touched);
+        }
+
+        if (!missingKeys.isEmpty()) {
+            persistentMisses.increment(missingKeys.size());
+            List<String> keys = new ArrayList<>(missingKeys.keySet());
+            List<String> missingTexts = keys.stream().map(textByKey::get).toList();
+            EmbeddingResponse response = embeddingBulkhead.call(
+                    () -> delegate.call(new EmbeddingRequest(missingTexts, request.getOptions())));
+
+            List<EmbeddingCacheEntry> entries = new ArrayList<>(keys.size());
+            for (Embedding embedding : response.getResults()) {
+                String key = keys.get(embedding.getIndex());
+                float[] vector = embedding.getOutput();
+                memoryCache.put(key, vector);
+                for (int index : missingKeys.get(key)) {
+                    vectors[index] = vector;
+                }
+                LocalDateTime now = LocalDateTime.now();
+                entries.add(new EmbeddingCacheEntry(key, modelName, key.substring(modelName.length() + 1),
+                        toBytes(vector), now, now));
+            }
+            store(entries);
+        }
+
+        List<Embedding> results = new ArrayList<>(vectors.length);
+        for (int i = 0; i < vectors.length; i++) {
+            results.add(new Embedding(vectors[i], i));
+        }
+        return new EmbeddingResponse(results);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        String key = cacheKey(text);
+        float[] cached = memoryCache.policy().getIfPresentQuietly(key);
+        if (cached != null) {
+            return cached;
+        }
+        if (queryBatcher == null) {
+            return EmbeddingModel.super.embed(text);
+        }
+        return queryBatcher.embed(key, text);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    private List<float[]> embedUncached(List<String> texts) {
+        return call(new EmbeddingRequest(texts, EmbeddingOptionsBuilder.builder().build())).getResults().stream()
+                .map(Embedding::getOutput)
+                .toList();
+    }
+
+    /**
+     * Inserts without reading first, and skips keys another node stored in the meantime instead of
+     * failing the whole batch on them.
+     */
+    private void store(List<EmbeddingCacheEntry> entries) {
+        try {
+            jdbcTemplate.batchUpdate(INSERT_ENTRY, entries.stream()
+                    .map(entry -> new Object[]{entry.getId(), entry.getModel(), entry.getContentHash(),
+                            entry.getEmbedding(), entry.getCreatedAt(), entry.getLastUsedAt()})
+                    .toList());
+        } catch (Exception e) {
+            log.warn("Could not persist {} embedding cache entries: {}", entries.size(), e.getMessage());
+        }
+    }
+
+    private void touch(List<Object[]> touched) {
+        if (touched.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(TOUCH_ENTRY, touched);
+        } catch (Exception e) {
+            log.warn("Could not update last use of {} embedding cache entries: {}", touched.size(), e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${intellibuy.embedding.cache.prune-interval:PT6H}",
+            initialDelayString = "${intellibuy.embedding.cache.prune-initial-delay:PT5M}")
+    public void prune() {
+        try {
+            int pruned = jdbcTemplate.update(PRUNE_ENTRIES, modelName, LocalDateTime.now().minus(retention));
+            Long size = jdbcTemplate.queryForObject("select count(*) from embedding_cache", Long.class);
+            persistentSize.set(size == null ? 0 : size);
+            if (pruned > 0) {
+                log.info("Pruned {} embedding cache entries, {} left", pruned, size);
+            }
+        } catch (Exception e) {
+            log.warn("Could not prune the embedding cache: {}", e.getMessage());
+        }
+    }
+
+    private String cacheKey(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return modelName + ":" + HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] toBytes(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    private static float[] toVector(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+}
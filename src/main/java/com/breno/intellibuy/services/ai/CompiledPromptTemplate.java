@@ -0,0 +1,64 @@
+package com.breno.intellibuy.services.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A prompt template split once into literal text and {@code {name}} placeholders, so rendering
+ * is plain concatenation instead of parsing the template again for every request.
+ */
+final class CompiledPromptTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{(\\w+)}");
+
+    private final List<String> literals;
+    private final List<String> variables;
+    private final int literalLength;
+
+    private CompiledPromptTemplate(List<String> literals, List<String> variables) {
+        this.literals = literals;
+        this.variables = variables;
+        this.literalLength = literals.stream().mapToInt(String::length).sum();
+    }
+
+    static CompiledPromptTemplate compile(String template) {
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(template);
+        int last = 0;
+        while (matcher.find()) {
+            literals.add(template.substring(last, matcher.start()));
+            variables.add(matcher.group(1));
+            last = matcher.end();
+        }
+        literals.add(template.substring(last));
+        return new CompiledPromptTemplate(List.copyOf(literals), List.copyOf(variables));
+    }
+
+    /**
+     * The template without its placeholders, i.e. the fixed part of every rendered prompt.
+     */
+    String literalText() {
+        return String.join("", literals);
+    }
+
+    String render(Map<String, String> values) {
+        int length = literalLength;
+        for (String variable : variables) {
+            length += values.getOrDefault(variable, "").length();
+        }
+        StringBuilder rendered = new StringBuilder(length);
+        for (int i = 0; i < variables.size(); i++) {
+            String value = values.get(variables.get(i));
+            if (value == null) {
+                throw new IllegalArgumentException("Missing value for prompt variable '" + variables.get(i) + "'.");
+            }
+            rendered.append(literals.get(i)).append(value);
+        }
+        return rendered.append(literals.get(literals.size() - 1)).toString();
+    }
+
+}
@@ -0,0 +1,179 @@
+package com.breno.intellibuy.services.ai;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the chat context within a token budget. Sections are taken in the order given, which
+ * is relevance order from the retriever, after compacting long purchase item lists and dropping
+ * duplicates of a document already taken. The first section that no longer fits ends the context.
+ * <p>
+ * A document is a duplicate when its text equals a taken one, or when it describes the same
+ * entity (same {@code purchase_id}, {@code product_id} and {@code customer_id} metadata) with
+ * nearly the same words. Documents about different entities are never merged, however similar
+ * their text, since two purchases often differ only in an ID or an amount.
+ */
+@Component
+public class ContextBudgeter {
+
+    static final String SEPARATOR = "\n---\n";
+
+    private static final String ITEMS_START = "Items: [";
+    private static final String ITEMS_END = "]. Total value:";
+    private static final Pattern ITEM_SEPARATOR = Pattern.compile(", (?=\\d+ unit\\(s\\) of )");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final List<String> ENTITY_KEYS = List.of("purchase_id", "product_id", "customer_id");
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+    private final int separatorTokens = tokenCountEstimator.estimate(SEPARATOR);
+    private final int maxTokens;
+    private final int maxPurchaseItems;
+    private final double duplicateSimilarity;
+
+    public ContextBudgeter(
+            @Value("${intellibuy.ai.context.max-tokens:1500}") int maxTokens,
+            @Value("${intellibuy.ai.context.max-purchase-items:10}") int maxPurchaseItems,
+            @Value("${intellibuy.ai.context.duplicate-similarity:0.9}") double duplicateSimilarity) {
+        this.maxTokens = maxTokens;
+        this.maxPurchaseItems = maxPurchaseItems;
+        this.duplicateSimilarity = duplicateSimilarity;
+    }
+
+    public int estimateTokens(String text) {
+        return tokenCountEstimator.estimate(text);
+    }
+
+    /**
+     * @param statistics precomputed aggregates placed ahead of the documents, or an empty string
+     * @param documents  retrieved documents, most relevant first
+     */
+    public Context build(String statistics, List<Document> documents) {
+        List<String> sections = new ArrayList<>(documents.size() + 1);
+        List<Taken> taken = new ArrayList<>(documents.size());
+        int tokens = 0;
+        int duplicates = 0;
+
+        if (!statistics.isEmpty()) {
+            sections.add(statistics);
+            tokens += estimateTokens(statistics);
+        }
+        int considered = 0;
+        for (Document document : documents) {
+            String text = compact(document.getText());
+            Taken candidate = new Taken(text, entity(document.getMetadata()), words(text));
+            if (isDuplicate(candidate, taken)) {
+                duplicates++;
+                considered++;
+                continue;
+            }
+            int cost = estimateTokens(text) + (sections.isEmpty() ? 0 : separatorTokens);
+            if (tokens + cost > maxTokens) {
+                break;
+            }
+            sections.add(text);
+            taken.add(candidate);
+            tokens += cost;
+            considered++;
+        }
+        return new Context(String.join(SEPARATOR, sections), tokens, sections.size(), duplicates,
+                documents.size() - considered);
+    }
+
+    /**
+     * Shortens a purchase's item list to the first {@code maxPurchaseItems} entries. Other
+     * documents are returned unchanged.
+     */
+    String compact(String text) {
+        int start = text.indexOf(ITEMS_START);
+        int end = text.lastIndexOf(ITEMS_END);
+        if (start < 0 || end < start) {
+            return text;
+        }
+        start += ITEMS_START.length();
+        String[] items = ITEM_SEPARATOR.split(text.substring(start, end));
+        if (items.length <= maxPurchaseItems) {
+            return text;
+        }
+        StringBuilder compacted = new StringBuilder(text.length()).append(text, 0, start);
+        for (int i = 0; i < maxPurchaseItems; i++) {
+            if (i > 0) {
+                compacted.append(", ");
+            }
+            compacted.append(items[i]);
+        }
+        return compacted.append(", and ").append(items.length - maxPurchaseItems).append(" more item(s)")
+                .append(text, end, text.length())
+                .toString();
+    }
+
+    private boolean isDuplicate(Taken candidate, List<Taken> taken) {
+        for (Taken other : taken) {
+            if (candidate.text().equals(other.text())) {
+                return true;
+            }
+            if (candidate.entity() != null && candidate.entity().equals(other.entity())
+                    && jaccard(candidate.words(), other.words()) >= duplicateSimilarity) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The entity IDs in the metadata, compared as strings since a vector store may return them as
+     * any numeric type, or {@code null} if there are none.
+     */
+    private static List<String> entity(Map<String, Object> metadata) {
+        List<String> ids = ENTITY_KEYS.stream()
+                .map(key -> Objects.toString(metadata.get(key), null))
+                .toList();
+        return ids.stream().allMatch(Objects::isNull) ? null : ids;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty()) {
+            return 1.0;
+        }
+        int shared = 0;
+        for (String word : a) {
+            if (b.contains(word)) {
+                shared++;
+            }
+        }
+        return (double) shared / (a.size() + b.size() - shared);
+    }
+
+    private static Set<String> words(String text) {
+        Set<String> words = new HashSet<>();
+        for (String word : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private record Taken(String text, List<String> entity, Set<String> words) {
+    }
+
+    /**
+     * @param sections   number of sections in the text, statistics included
+     * @param duplicates documents dropped as duplicates
+     * @param overBudget documents left out because the budget was reached
+     */
+    public record Context(String text, int tokens, int sections, int duplicates, int overBudget) {
+    }
+
+}
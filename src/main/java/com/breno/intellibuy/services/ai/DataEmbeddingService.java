@@ -1,217 +1,281 @@
 package com.breno.intellibuy.services.ai;
 
 
+import com.breno.intellibuy.config.AdaptiveLimit;
+import com.breno.intellibuy.config.LlmScheduler;
+import com.breno.intellibuy.config.SingleFlight;
 import com.breno.intellibuy.model.Customer;
 import com.breno.intellibuy.model.Product;
 import com.breno.intellibuy.model.Purchase;
-import com.breno.intellibuy.repository.CustomerRepository;
-import com.breno.intellibuy.repository.ProductRepository;
-import com.breno.intellibuy.repository.PurchaseRepository;
+import com.breno.intellibuy.services.PurchaseStatsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.annotation.Observed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.chat.prompt.SystemPromptTemplate;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-
-import java.util.ArrayList;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @Service
 public class DataEmbeddingService {
 
-    private static final String INITIAL_INGESTION_FLAG = "initial_ingestion_complete_v1";
-
-    private final ProductRepository productRepository;
-    private final CustomerRepository customerRepository;
-    private final PurchaseRepository purchaseRepository;
-    private final VectorStore vectorStore;
+    private static final Logger log = LoggerFactory.getLogger(DataEmbeddingService.class);
+
+    private static final String NO_CONTEXT_ANSWER = "No relevant product information found in my catalog to answer your question.";
+
+    private final DataIngestionService dataIngestionService;
+    private final IngestionStateService ingestionStateService;
+    private final IncrementalReconciler incrementalReconciler;
+    private final EmbeddingDocumentFactory documentFactory;
+    private final HybridRetriever hybridRetriever;
+    private final EmbeddingQueue embeddingQueue;
+    private final AnswerCache answerCache;
+    private final QueryIntentRouter queryIntentRouter;
+    private final PurchaseStatsService purchaseStatsService;
+    private final ContextBudgeter contextBudgeter;
+    private final LlmScheduler llmScheduler;
+    private final SingleFlight<String, String> chatSingleFlight;
     private final ChatClient chatClient;
-
-    @Value("classpath:/prompts/system-message.st")
-    private Resource systemMessage;
+    private final CompiledPromptTemplate systemTemplate;
+    private final int systemTemplateTokens;
+    private final Timer firstTokenTimer;
+    private final Timer streamedGenerationTimer;
+    private final Timer blockingGenerationTimer;
 
     public DataEmbeddingService(
-            ProductRepository productRepository,
-            CustomerRepository customerRepository,
-            PurchaseRepository purchaseRepository,
-            VectorStore vectorStore,
-            ChatClient.Builder chatClientBuilder) {
-        this.productRepository = productRepository;
-        this.customerRepository = customerRepository;
-        this.purchaseRepository = purchaseRepository;
-        this.vectorStore = vectorStore;
+            DataIngestionService dataIngestionService,
+            IngestionStateService ingestionStateService,
+            IncrementalReconciler incrementalReconciler,
+            EmbeddingDocumentFactory documentFactory,
+            HybridRetriever hybridRetriever,
+            EmbeddingQueue embeddingQueue,
+            AnswerCache answerCache,
+            QueryIntentRouter queryIntentRouter,
+            PurchaseStatsService purchaseStatsService,
+            ContextBudgeter contextBudgeter,
+            LlmScheduler llmScheduler,
+            SingleFlight<String, String> chatSingleFlight,
+            ChatClient.Builder chatClientBuilder,
+            MeterRegistry meterRegistry,
+            @Value("classpath:/prompts/system-message.st") Resource systemMessage) {
+        this.dataIngestionService = dataIngestionService;
+        this.ingestionStateService = ingestionStateService;
+        this.incrementalReconciler = incrementalReconciler;
+        this.documentFactory = documentFactory;
+        this.hybridRetriever = hybridRetriever;
+        this.embeddingQueue = embeddingQueue;
+        this.answerCache = answerCache;
+        this.queryIntentRouter = queryIntentRouter;
+        this.purchaseStatsService = purchaseStatsService;
+        this.contextBudgeter = contextBudgeter;
+        this.llmScheduler = llmScheduler;
+        this.chatSingleFlight = chatSingleFlight;
         this.chatClient = chatClientBuilder.build();
+        try {
+            this.systemTemplate = CompiledPromptTemplate.compile(systemMessage.getContentAsString(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the system prompt template", e);
+        }
+        this.systemTemplateTokens = contextBudgeter.estimateTokens(systemTemplate.literalText());
+        this.firstTokenTimer = Timer.builder("intellibuy.chat.first-token")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.streamedGenerationTimer = generationTimer("stream", meterRegistry);
+        this.blockingGenerationTimer = generationTimer("blocking", meterRegistry);
     }
 
-    @Transactional
-    public void runInitialEmbeddingIfNeeded() {
-        if (!initialIngestionHasBeenPerformed()) {
-            System.out.println("First time startup detected. Performing initial bulk data ingestion...");
-            ingestAllData();
-            createIngestionFlag();
-            System.out.println("Initial bulk data ingestion complete.");
-        } else {
-            System.out.println("Initial ingestion flag found. Skipping bulk data ingestion.");
-        }
+    private static Timer generationTimer(String mode, MeterRegistry meterRegistry) {
+        return Timer.builder("intellibuy.chat.generation")
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
-    private void ingestAllData() {
-
-        List<Product> allProducts = productRepository.findAll();
-        System.out.println("Starting ingestion of " + allProducts.size() + " products to Vector Store.");
-
-        List<Document> productDocuments = allProducts.stream().map(product -> {
-            String content = String.format("Product: %s. Description: %s. Price: $%.2f.",
-                    product.getName(), product.getDescription(), product.getPrice());
-
-            Map<String, Object> metadata = Map.of(
-                    "type", "product",
-                    "product_id", product.getId(),
-                    "product_name", product.getName(),
-                    "product_price", product.getPrice().doubleValue()
-            );
-            return new Document(content, metadata);
-        }).toList();
-
-        List<Customer> allCustomers = customerRepository.findAll();
-        System.out.println("Starting ingestion of " + allCustomers.size() + " customers to Vector Store.");
-
-        List<Document> customerDocuments = allCustomers.stream().map(customer -> {
-            String content = String.format("Customer: %s. CPF: %s. Phone: %s.",
-                    customer.getName(), customer.getCpf(), customer.getPhone());
-
-            Map<String, Object> metadata = Map.of(
-                    "type", "customer",
-                    "customer_id", customer.getId(),
-                    "customer_name", customer.getName()
-            );
-            return new Document(content, metadata);
-        }).toList();
-
-        List<Purchase> allPurchases = purchaseRepository.findAll();
-        System.out.println("Starting ingestion of " + allPurchases.size() + " purchases to Vector Store.");
-        List<Document> purchaseDocuments = allPurchases.stream().map(purchase -> {
-            String itemsSummary = purchase.getPurchaseItem().stream()
-                    .map(item -> String.format("%d unit(s) of %s", item.getQuantity(), item.getProduct().getName()))
-                    .collect(Collectors.joining(", "));
-
-            String content = String.format("Purchase made by customer %s on %s. Items: [%s]. Total value: $%.2f.",
-                    purchase.getCustomer().getName(),
-                    purchase.getDatePurchase().toLocalDate().toString(),
-                    itemsSummary,
-                    purchase.getTotalValue());
-
-            Map<String, Object> metadata = Map.of(
-                    "type", "purchase",
-                    "purchase_id", purchase.getId(),
-                    "customer_id", purchase.getCustomer().getId(),
-                    "total_value", purchase.getTotalValue().doubleValue(),
-                    "purchase_date", purchase.getDatePurchase().toString()
-            );
-            return new Document(content, metadata);
-        }).toList();
-
-        List<Document> allDocuments = new ArrayList<>();
-        allDocuments.addAll(productDocuments);
-        allDocuments.addAll(customerDocuments);
-        allDocuments.addAll(purchaseDocuments);
-
-
-        if (!allDocuments.isEmpty()) {
-            vectorStore.add(allDocuments);
-            System.out.println("Ingestion of all documents to Vector Store completed successfully.");
+
+    public void runInitialEmbeddingIfNeeded() {
+        if (!ingestionStateService.isInitialIngestionComplete()) {
+            log.info("First time startup detected. Performing initial bulk data ingestion...");
+            LocalDateTime started = incrementalReconciler.databaseNow();
+            dataIngestionService.ingestAll();
+            incrementalReconciler.startFrom(started);
+            ingestionStateService.markInitialIngestionComplete();
+            dataIngestionService.resetCheckpoints();
+            log.info("Initial bulk data ingestion complete.");
         } else {
-            System.out.println("No data to ingest to Vector Store.");
+            log.info("Initial ingestion already recorded. Skipping bulk data ingestion.");
         }
     }
 
-    private boolean initialIngestionHasBeenPerformed() {
-        SearchRequest request = SearchRequest.builder()
-                .query("checking for ingestion flag")
-                .filterExpression("ingestion_flag == '" + INITIAL_INGESTION_FLAG + "'")
-                .topK(1)
-                .build();
+    public void embedProduct(Product product) {
+        embeddingQueue.submit(documentFactory.productDocument(product));
+    }
 
-        List<Document> results = vectorStore.similaritySearch(request);
-        return !results.isEmpty();
+    public void removeProduct(Long productId) {
+        embeddingQueue.submitDelete(EmbeddingDocumentFactory.documentId("product", productId));
     }
 
-    private void createIngestionFlag() {
-        Document flagDocument = new Document(
-                "System flag: Initial data ingestion has been completed.",
-                Map.of("type", "system_flag", "ingestion_flag", INITIAL_INGESTION_FLAG)
-        );
-        vectorStore.add(List.of(flagDocument));
+    public void embedCustomer(Customer customer) {
+        embeddingQueue.submit(documentFactory.customerDocument(customer));
     }
 
-    public void embedProduct(Product product) {
-        vectorStore.add(List.of(createProductDocument(product)));
+    public void removeCustomer(Long customerId) {
+        embeddingQueue.submitDelete(EmbeddingDocumentFactory.documentId("customer", customerId));
     }
 
-    private Document createProductDocument(Product product) {
-        String content = String.format("Product: %s. Description: %s. Price: $%.2f.",
-                product.getName(), product.getDescription(), product.getPrice());
-        Map<String, Object> metadata = Map.of(
-                "type", "product", "product_id", product.getId().toString()
-        );
-        return new Document(content, metadata);
+    public void embedPurchase(Purchase purchase) {
+        embeddingQueue.submit(documentFactory.purchaseDocument(purchase));
     }
 
-    public void embedCustomer(Customer customer) {
-        vectorStore.add(List.of(createCustomerDocument(customer)));
+    public void removePurchase(Long purchaseId) {
+        embeddingQueue.submitDelete(EmbeddingDocumentFactory.documentId("purchase", purchaseId));
     }
 
-    private Document createCustomerDocument(Customer customer) {
-        String content = String.format("Customer: %s. CPF: %s. Phone: %s.",
-                customer.getName(), customer.getCpf(), customer.getPhone());
-        Map<String, Object> metadata = Map.of(
-                "type", "customer", "customer_id", customer.getId().toString()
-        );
-        return new Document(content, metadata);
+    @Observed(name = "intellibuy.chat.answer", contextualName = "chat-answer")
+    public String generateAnswer(String query) {
+        AnswerCache.Lookup cached = answerCache.lookup(query);
+        if (cached.isHit()) {
+            return cached.answer();
+        }
+
+        // concurrent identical questions share one retrieval and generation
+        return chatSingleFlight.execute(cached.key(), () -> {
+            long start = System.nanoTime();
+            PreparedPrompt prepared = buildPrompt(query);
+            String answer = prepared.prompt() == null ? NO_CONTEXT_ANSWER : generateUncachedAnswer(prepared.prompt());
+            answerCache.put(cached, answer, (System.nanoTime() - start) / 1_000_000, prepared.dependencies());
+            return answer;
+        });
     }
 
-    public void embedPurchase(Purchase purchase) {
-        vectorStore.add(List.of(createPurchaseDocument(purchase)));
+    /**
+     * Streams the answer as it is generated. Retrieval runs on subscription, and cancelling the
+     * subscription (e.g. the client disconnecting) cancels the underlying Ollama request. A full
+     * LLM queue is reported before the stream starts, while the response status can still change;
+     * answers already in the exact cache tier are served without that check.
+     */
+    public Flux<String> streamAnswer(String query) {
+        String exact = answerCache.lookupExact(query);
+        if (exact != null) {
+            return Flux.just(exact);
+        }
+        llmScheduler.checkAdmission(LlmScheduler.Priority.INTERACTIVE);
+        return Flux.defer(() -> {
+            AnswerCache.Lookup cached = answerCache.lookup(query);
+            if (cached.isHit()) {
+                return Flux.just(cached.answer());
+            }
+
+            long start = System.nanoTime();
+            PreparedPrompt prepared = buildPrompt(query);
+            Prompt prompt = prepared.prompt();
+            if (prompt == null) {
+                return Flux.just(NO_CONTEXT_ANSWER);
+            }
+
+            StringBuilder answer = new StringBuilder();
+            AtomicBoolean firstToken = new AtomicBoolean(true);
+            return Flux.using(
+                    () -> llmScheduler.acquire(LlmScheduler.Priority.INTERACTIVE),
+                    permit -> {
+                        long generationStart = System.nanoTime();
+                        return chatClient.prompt(prompt).stream().content()
+                                .doOnError(e -> permit.fail())
+                                .doOnNext(token -> {
+                                    if (firstToken.compareAndSet(true, false)) {
+                                        firstTokenTimer.record(System.nanoTime() - generationStart, TimeUnit.NANOSECONDS);
+                                    }
+                                    answer.append(token);
+                                })
+                                .doOnComplete(() -> {
+                                    streamedGenerationTimer.record(System.nanoTime() - generationStart, TimeUnit.NANOSECONDS);
+                                    answerCache.put(cached, answer.toString(), (System.nanoTime() - start) / 1_000_000,
+                                            prepared.dependencies());
+                                });
+                    },
+                    AdaptiveLimit.Permit::close);
+        }).subscribeOn(Schedulers.boundedElastic());
     }
 
-    private Document createPurchaseDocument(Purchase purchase) {
-        String itemsSummary = purchase.getPurchaseItem().stream()
-                .map(item -> String.format("%d unit(s) of %s", item.getQuantity(), item.getProduct().getName()))
-                .collect(Collectors.joining(", "));
-        String content = String.format("Purchase made by customer %s on %s. Items: [%s]. Total value: $%.2f.",
-                purchase.getCustomer().getName(), purchase.getDatePurchase().toLocalDate().toString(), itemsSummary, purchase.getTotalValue());
-        Map<String, Object> metadata = Map.of(
-                "type", "purchase", "purchase_id", purchase.getId().toString()
-        );
-        return new Document(content, metadata);
+    private String generateUncachedAnswer(Prompt prompt) {
+        ChatResponse response = llmScheduler.call(LlmScheduler.Priority.INTERACTIVE, () -> blockingGenerationTimer.record(() -> chatClient.prompt(prompt).call().chatResponse()));
+        if (response == null || response.getResult() == null) {
+            return "";
+        }
+        log.info("Ollama evaluated {} prompt tokens", response.getMetadata().getUsage().getPromptTokens());
+        return response.getResult().getOutput().getText();
     }
 
-    public String generateAnswer(String query) {
-        List<Document> relevantDocuments = vectorStore.similaritySearch(
-            SearchRequest.builder()
-                    .query(query)
-                    .topK(5)
-                    .build()
-        );
-
-        if (relevantDocuments.isEmpty()) {
-            return "No relevant product information found in my catalog to answer your question.";
+    /**
+     * Retrieves the context for a question and renders the prompt, which is {@code null} when
+     * nothing relevant was found. Also returns what the answer will depend on, for the answer cache.
+     */
+    private PreparedPrompt buildPrompt(String query) {
+        QueryIntentRouter.RetrievalPlan plan = queryIntentRouter.route(query);
+        List<Document> relevantDocuments = hybridRetriever.retrieve(plan);
+        Map<Long, String> customers = new LinkedHashMap<>();
+        Map<Long, String> products = new LinkedHashMap<>();
+        collectStatisticsSubjects(relevantDocuments, customers, products);
+        boolean topSelling = plan.ranking() && plan.types().contains("product");
+        String statistics = purchaseStatsService.describe(customers, products, topSelling);
+
+        // rankings and empty results depend on every document of the searched types
+        boolean wholeCollection = plan.ranking() || relevantDocuments.isEmpty();
+        AnswerCache.Dependencies dependencies = new AnswerCache.Dependencies(
+                relevantDocuments.stream().map(Document::getId).collect(Collectors.toSet()),
+                customers.keySet(), products.keySet(),
+                wholeCollection ? plan.types() : Set.of(),
+                topSelling);
+
+        if (relevantDocuments.isEmpty() && statistics.isEmpty()) {
+            return new PreparedPrompt(null, dependencies);
         }
 
-        String context = relevantDocuments.stream()
-                .map(Document::getText)
-                .collect(Collectors.joining("\n---\n"));
+        ContextBudgeter.Context context = contextBudgeter.build(statistics, relevantDocuments);
+        log.info("Prompt estimated at {} tokens: {} context tokens in {} sections, {} duplicate and {} over-budget documents dropped",
+                systemTemplateTokens + context.tokens() + contextBudgeter.estimateTokens(query),
+                context.tokens(), context.sections(), context.duplicates(), context.overBudget());
+
+        Prompt prompt = new Prompt(new SystemMessage(systemTemplate.render(Map.of("context", context.text(), "query", query))));
+        return new PreparedPrompt(prompt, dependencies);
+    }
 
-        SystemPromptTemplate systemPromptTemplate = new SystemPromptTemplate(systemMessage);
-        Prompt prompt = new Prompt(systemPromptTemplate.createMessage(Map.of("context", context, "query", query)));
+    /**
+     * Collects the customers and products the search returned, whose precomputed purchase
+     * aggregates go into the prompt, so totals and favourites come from the read model instead
+     * of being worked out by the model from individual purchases.
+     */
+    private static void collectStatisticsSubjects(List<Document> documents, Map<Long, String> customers, Map<Long, String> products) {
+        for (Document document : documents) {
+            Map<String, Object> metadata = document.getMetadata();
+            if (metadata.get("customer_id") instanceof Number id && metadata.get("customer_name") != null) {
+                customers.putIfAbsent(id.longValue(), metadata.get("customer_name").toString());
+            }
+            if (metadata.get("product_id") instanceof Number id && metadata.get("product_name") != null) {
+                products.putIfAbsent(id.longValue(), metadata.get("product_name").toString());
+            }
+        }
+    }
 
-        return chatClient.prompt(prompt).call().content();
+    private record PreparedPrompt(Prompt prompt, AnswerCache.Dependencies dependencies) {
     }
 
 }
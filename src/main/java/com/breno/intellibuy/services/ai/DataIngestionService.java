@@ -0,0 +1,186 @@
+package com.breno.intellibuy.services.ai;
+
+import com.breno.intellibuy.model.Customer;
+import com.breno.intellibuy.model.IngestionCheckpoint;
+import com.breno.intellibuy.model.Product;
+import com.breno.intellibuy.model.Purchase;
+import com.breno.intellibuy.repository.CustomerRepository;
+import com.breno.intellibuy.repository.IngestionCheckpointRepository;
+import com.breno.intellibuy.repository.ProductRepository;
+import com.breno.intellibuy.repository.PurchaseRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+
+/**
+ * Streams every product, customer and purchase into the vector store using keyset pagination.
+ * Pages are embedded on a bounded worker pool and the last fully written ID per entity type is
+ * checkpointed, so an interrupted ingestion resumes where it stopped.
+ */
+@Service
+public class DataIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(DataIngestionService.class);
+
+    private final ProductRepository productRepository;
+    private final CustomerRepository customerRepository;
+    private final PurchaseRepository purchaseRepository;
+    private final IngestionCheckpointRepository checkpointRepository;
+    private final IngestionStateService ingestionStateService;
+    private final EmbeddingDocumentFactory documentFactory;
+    private final VectorStore vectorStore;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ThreadFactory threadFactory;
+    private final int batchSize;
+    private final int parallelism;
+
+    public DataIngestionService(
+            ProductRepository productRepository,
+            CustomerRepository customerRepository,
+            PurchaseRepository purchaseRepository,
+            IngestionCheckpointRepository checkpointRepository,
+            IngestionStateService ingestionStateService,
+            EmbeddingDocumentFactory documentFactory,
+            VectorStore vectorStore,
+            ApplicationEventPublisher eventPublisher,
+            ThreadFactory workerThreadFactory,
+            @Value("${intellibuy.ingestion.batch-size:200}") int batchSize,
+            @Value("${intellibuy.ingestion.parallelism:4}") int parallelism) {
+        this.productRepository = productRepository;
+        this.customerRepository = customerRepository;
+        this.purchaseRepository = purchaseRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.ingestionStateService = ingestionStateService;
+        this.documentFactory = documentFactory;
+        this.vectorStore = vectorStore;
+        this.eventPublisher = eventPublisher;
+        this.threadFactory = workerThreadFactory;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+    }
+
+    public void ingestAll() {
+        ingest("product",
+                lastId -> productRepository.findByIdGreaterThanOrderByIdAsc(lastId, Limit.of(batchSize)),
+                Product::getId,
+                documentFactory::productDocument);
+        ingest("customer",
+                lastId -> customerRepository.findByIdGreaterThanOrderByIdAsc(lastId, Limit.of(batchSize)),
+                Customer::getId,
+                documentFactory::customerDocument);
+        ingest("purchase",
+                lastId -> {
+                    List<Long> ids = purchaseRepository.findIdsGreaterThan(lastId, Limit.of(batchSize));
+                    return ids.isEmpty() ? List.of() : purchaseRepository.findByIdInOrderByIdAsc(ids);
+                },
+                Purchase::getId,
+                documentFactory::purchaseDocument);
+    }
+
+    /**
+     * Forgets all checkpoints, so the next {@link #ingestAll()} starts from the beginning.
+     */
+    public void resetCheckpoints() {
+        checkpointRepository.deleteAll();
+    }
+
+    private <T> void ingest(
+            String entityType,
+            Function<Long, List<T>> pageAfter,
+            Function<T, Long> idOf,
+            Function<T, Document> toDocument) {
+
+        long lastId = checkpointRepository.findById(entityType)
+                .map(IngestionCheckpoint::getLastId)
+                .orElse(0L);
+        if (lastId > 0) {
+            log.info("Resuming {} ingestion after id {}", entityType, lastId);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, threadFactory);
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        Deque<PendingBatch> pending = new ArrayDeque<>();
+        long started = System.nanoTime();
+        long rows = 0;
+
+        try {
+            List<T> page = pageAfter.apply(lastId);
+            while (!page.isEmpty()) {
+                List<Document> documents = page.stream().map(toDocument).toList();
+                long pageLastId = idOf.apply(page.get(page.size() - 1));
+
+                inFlight.acquire();
+                CompletableFuture<Void> write = CompletableFuture
+                        .runAsync(() -> vectorStore.add(documents), executor)
+                        .whenComplete((ignored, error) -> inFlight.release());
+                pending.addLast(new PendingBatch(write, pageLastId));
+
+                rows += page.size();
+                checkpointCompleted(entityType, pending, false);
+                logProgress(entityType, rows, started);
+                page = pageAfter.apply(pageLastId);
+            }
+            checkpointCompleted(entityType, pending, true);
+            eventPublisher.publishEvent(new VectorStoreChangedEvent((int) rows, ingestionStateService.recordVectorStoreWrite()));
+            log.info("Ingested {} {} documents in {} ms", rows, entityType, (System.nanoTime() - started) / 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ingestion of " + entityType + " was interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Persists the highest ID up to which every batch has been written. Batches finish out of
+     * order, so only the completed prefix of the pending queue can be checkpointed.
+     */
+    private void checkpointCompleted(String entityType, Deque<PendingBatch> pending, boolean waitForAll) {
+        Long completedId = null;
+        while (!pending.isEmpty() && (waitForAll || pending.peekFirst().write().isDone())) {
+            PendingBatch batch = pending.pollFirst();
+            try {
+                batch.write().join();
+            } catch (CompletionException e) {
+                if (completedId != null) {
+                    saveCheckpoint(entityType, completedId);
+                }
+                throw new IllegalStateException("Failed to ingest " + entityType + " batch ending at id " + batch.lastId(), e.getCause());
+            }
+            completedId = batch.lastId();
+        }
+        if (completedId != null) {
+            saveCheckpoint(entityType, completedId);
+        }
+    }
+
+    private void saveCheckpoint(String entityType, long lastId) {
+        checkpointRepository.save(new IngestionCheckpoint(entityType, lastId, LocalDateTime.now()));
+    }
+
+    private void logProgress(String entityType, long rows, long started) {
+        double seconds = (System.nanoTime() - started) / 1_000_000_000.0;
+        log.info("Ingested {} {} rows ({} rows/s)", rows, entityType, Math.round(rows / Math.max(seconds, 0.001)));
+    }
+
+    private record PendingBatch(CompletableFuture<Void> write, long lastId) {
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.breno.intellibuy.services.ai;
+
+import com.breno.intellibuy.model.Customer;
+import com.breno.intellibuy.model.Product;
+import com.breno.intellibuy.model.Purchase;
+import com.breno.intellibuy.model.PurchaseItem;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Renders the text of the vector store documents. Produces the same text as the
+ * {@code String.format} templates it replaces, but appends into a {@link StringBuilder} sized
+ * up front and writes prices as fixed-point cents, so no format string is parsed, no
+ * {@code Formatter} is created and the builder never grows. Prices always use a dot as decimal
+ * separator, whatever the default locale.
+ */
+public final class DocumentTextRenderer {
+
+    private static final int LONG_SAFE_PRECISION = 18;
+
+    // room for the template text, a price or date and the numbers of a row
+    private static final int FIXED_CAPACITY = 96;
+    private static final int ITEM_CAPACITY = 24;
+
+    private DocumentTextRenderer() {
+    }
+
+    /**
+     * {@code "Product: %s. Description: %s. Price: $%.2f."}
+     */
+    public static String product(Product product) {
+        StringBuilder text = new StringBuilder(FIXED_CAPACITY + length(product.getName()) + length(product.getDescription()));
+        text.append("Product: ").append(product.getName())
+                .append(". Description: ").append(product.getDescription())
+                .append(". Price: $");
+        appendPrice(text, product.getPrice());
+        return text.append('.').toString();
+    }
+
+    /**
+     * {@code "Customer: %s. CPF: %s. Phone: %s."}
+     */
+    public static String customer(Customer customer) {
+        return new StringBuilder(FIXED_CAPACITY + length(customer.getName()) + length(customer.getCpf()) + length(customer.getPhone()))
+                .append("Customer: ").append(customer.getName())
+                .append(". CPF: ").append(customer.getCpf())
+                .append(". Phone: ").append(customer.getPhone())
+                .append('.')
+                .toString();
+    }
+
+    /**
+     * {@code "Purchase made by customer %s on %s. Items: [%s]. Total value: $%.2f."}, the items
+     * being {@code "%d unit(s) of %s"} joined with {@code ", "}.
+     */
+    public static String purchase(Purchase purchase) {
+        List<PurchaseItem> items = purchase.getPurchaseItem();
+        int capacity = FIXED_CAPACITY + length(purchase.getCustomer().getName());
+        for (PurchaseItem item : items) {
+            capacity += ITEM_CAPACITY + length(item.getProduct().getName());
+        }
+        StringBuilder text = new StringBuilder(capacity);
+        text.append("Purchase made by customer ").append(purchase.getCustomer().getName()).append(" on ");
+        appendDate(text, purchase.getDatePurchase());
+        text.append(". Items: [");
+        for (int i = 0; i < items.size(); i++) {
+            PurchaseItem item = items.get(i);
+            if (i > 0) {
+                text.append(", ");
+            }
+            Integer quantity = item.getQuantity();
+            if (quantity == null) {
+                text.append("null");
+            } else {
+                text.append(quantity.intValue());
+            }
+            text.append(" unit(s) of ").append(item.getProduct().getName());
+        }
+        text.append("]. Total value: $");
+        appendPrice(text, purchase.getTotalValue());
+        return text.append('.').toString();
+    }
+
+    /**
+     * Same digits as {@code %.2f}: rounded half-up to two decimals, no grouping. Like
+     * {@code %.2f}, the sign is taken before rounding, so {@code -0.001} gives {@code -0.00}, and
+     * a missing price is {@code "null"} cut to the precision.
+     */
+    static void appendPrice(StringBuilder text, BigDecimal value) {
+        if (value == null) {
+            text.append("nu");
+            return;
+        }
+        if (value.signum() < 0) {
+            text.append('-');
+            value = value.negate();
+        }
+        // a no-op for prices read from a numeric(_, 2) column
+        BigDecimal scaled = value.setScale(2, RoundingMode.HALF_UP);
+        if (scaled.precision() > LONG_SAFE_PRECISION) {
+            text.append(scaled.toPlainString());
+            return;
+        }
+        long cents = scaled.unscaledValue().longValue();
+        long fraction = cents % 100;
+        text.append(cents / 100).append('.');
+        if (fraction < 10) {
+            text.append('0');
+        }
+        text.append(fraction);
+    }
+
+    /**
+     * Same text as {@code LocalDate.toString()} for four-digit years.
+     */
+    static void appendDate(StringBuilder text, LocalDateTime dateTime) {
+        if (dateTime == null) {
+            text.append("null");
+            return;
+        }
+        int year = dateTime.getYear();
+        if (year < 1000 || year > 9999) {
+            text.append(dateTime.toLocalDate());
+            return;
+        }
+        text.append(year).append('-');
+        appendTwoDigits(text, dateTime.getMonthValue());
+        text.append('-');
+        appendTwoDigits(text, dateTime.getDayOfMonth());
+    }
+
+    private static void appendTwoDigits(StringBuilder text, int value) {
+        if (value < 10) {
+            text.append('0');
+        }
+        text.append(value);
+    }
+
+    private static int length(String value) {
+        return value == null ? 4 : value.length();
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.breno.intellibuy.services.ai;
+
+import com.breno.intellibuy.model.Customer;
+import com.breno.intellibuy.model.Product;
+import com.breno.intellibuy.model.Purchase;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Builds the vector store documents for each entity type. Shared by the per-entity
+ * write path and the bulk ingestion, so both produce the same text and metadata.
+ * Columns are nullable, so metadata keys whose value is missing are left out.
+ */
+@Component
+public class EmbeddingDocumentFactory {
+
+    public Document productDocument(Product product) {
+        String content = DocumentTextRenderer.product(product);
+
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("type", "product");
+        putIfPresent(metadata, "product_id", product.getId());
+        putIfPresent(metadata, "product_name", product.getName());
+        putIfPresent(metadata, "product_price", toDouble(product.getPrice()));
+        return new Document(documentId("product", product.getId()), content, metadata);
+    }
+
+    public Document customerDocument(Customer customer) {
+        String content = DocumentTextRenderer.customer(customer);
+
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("type", "customer");
+        putIfPresent(metadata, "customer_id", customer.getId());
+        putIfPresent(metadata, "customer_name", customer.getName());
+        return new Document(documentId("customer", customer.getId()), content, metadata);
+    }
+
+    public Document purchaseDocument(Purchase purchase) {
+        String content = DocumentTextRenderer.purchase(purchase);
+
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("type", "purchase");
+        putIfPresent(metadata, "purchase_id", purchase.getId());
+        putIfPresent(metadata, "customer_id", purchase.getCustomer().getId());
+        putIfPresent(metadata, "customer_name", purchase.getCustomer().getName());
+        putIfPresent(metadata, "total_value", toDouble(purchase.getTotalValue()));
+        if (purchase.getDatePurchase() != null) {
+            metadata.put("purchase_date", purchase.getDatePurchase().toString());
+        }
+        return new Document(documentId("purchase", purchase.getId()), content, metadata);
+    }
+
+    private static void putIfPresent(Map<String, Object> metadata, String key, Object value) {
+        if (value != null) {
+            metadata.put(key, value);
+        }
+    }
+
+    private static Double toDouble(BigDecimal value) {
+        return value == null ? null : value.doubleValue();
+    }
+
+    /**
+     * Derives a stable vector document ID from the entity type and key, so re-embedding an
+     * entity overwrites its previous vector instead of adding another one.
+     */
+    public static String documentId(String type, Object key) {
+        return UUID.nameUUIDFromBytes((type + ":" + key).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+}
@@ -0,0 +1,315 @@
+package com.breno.intellibuy.services.ai;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers embedding jobs produced by the write paths and drains them in micro-batches
+ * on background workers, so a REST write only pays for its database work. Jobs are
+ * partitioned by document ID so writes to the same document are applied in order. A batch the
+ * vector store rejects is retried in place with exponential backoff, which keeps that order; after
+ * the last attempt its document IDs are logged and left to the {@link IncrementalReconciler}.
+ * When a partition stays full for {@code offer-timeout} the job is dropped the same way, rather
+ * than written out of order on the committing thread. On shutdown, batches the workers were
+ * holding are written before what is still queued.
+ */
+@Component
+public class EmbeddingQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingQueue.class);
+
+    private final VectorStore vectorStore;
+    private final ApplicationEventPublisher eventPublisher;
+    private final IngestionStateService ingestionStateService;
+    private final ThreadFactory threadFactory;
+    private final List<BlockingQueue<EmbeddingJob>> partitions = new ArrayList<>();
+    private final List<Queue<EmbeddingJob>> unfinished = new ArrayList<>();
+    private final int batchSize;
+    private final long lingerMillis;
+    private final int workerCount;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final long maxRetryBackoffMillis;
+    private final long offerTimeoutMillis;
+    private final List<Thread> workers = new ArrayList<>();
+    private final DistributionSummary batchSizeSummary;
+    private final Timer lagTimer;
+    private final Timer batchTimer;
+    private final Counter retries;
+    private final Counter failedDocuments;
+    private final Counter rejectedDocuments;
+
+    private volatile boolean running;
+
+    public EmbeddingQueue(
+            VectorStore vectorStore,
+            ApplicationEventPublisher eventPublisher,
+            IngestionStateService ingestionStateService,
+            ThreadFactory workerThreadFactory,
+            MeterRegistry meterRegistry,
+            @Value("${intellibuy.embedding.queue.capacity:10000}") int capacity,
+            @Value("${intellibuy.embedding.queue.batch-size:32}") int batchSize,
+            @Value("${intellibuy.embedding.queue.linger-ms:200}") long lingerMillis,
+            @Value("${intellibuy.embedding.queue.workers:2}") int workerCount,
+            @Value("${intellibuy.embedding.queue.max-attempts:4}") int maxAttempts,
+            @Value("${intellibuy.embedding.queue.retry-backoff:PT1S}") Duration retryBackoff,
+            @Value("${intellibuy.embedding.queue.max-retry-backoff:PT30S}") Duration maxRetryBackoff,
+            @Value("${intellibuy.embedding.queue.offer-timeout:PT0.5S}") Duration offerTimeout) {
+        this.vectorStore = vectorStore;
+        this.eventPublisher = eventPublisher;
+        this.ingestionStateService = ingestionStateService;
+        this.threadFactory = workerThreadFactory;
+        for (int i = 0; i < workerCount; i++) {
+            partitions.add(new LinkedBlockingQueue<>(Math.max(1, capacity / workerCount)));
+            unfinished.add(new ConcurrentLinkedQueue<>());
+        }
+        this.batchSize = batchSize;
+        this.lingerMillis = lingerMillis;
+        this.workerCount = workerCount;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffMillis = retryBackoff.toMillis();
+        this.maxRetryBackoffMillis = maxRetryBackoff.toMillis();
+        this.offerTimeoutMillis = offerTimeout.toMillis();
+
+        Gauge.builder("intellibuy.embedding.queue.depth", this, EmbeddingQueue::depth)
+                .description("Embedding jobs waiting to be written to the vector store")
+                .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("intellibuy.embedding.batch.size")
+                .description("Documents sent to the vector store per batch")
+                .register(meterRegistry);
+        this.lagTimer = Timer.builder("intellibuy.embedding.lag")
+                .description("Time between a job being enqueued and its batch being written")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("intellibuy.embedding.batch.latency")
+                .description("Time spent embedding and writing one batch")
+                .register(meterRegistry);
+        this.retries = Counter.builder("intellibuy.embedding.batch.retries")
+                .description("Vector store writes retried after a failure")
+                .register(meterRegistry);
+        this.failedDocuments = Counter.builder("intellibuy.embedding.failed")
+                .description("Documents dropped from the queue after every write attempt failed")
+                .register(meterRegistry);
+        this.rejectedDocuments = Counter.builder("intellibuy.embedding.queue.rejected")
+                .description("Jobs dropped because their partition stayed full")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        for (int i = 0; i < workerCount; i++) {
+            int partition = i;
+            Thread worker = threadFactory.newThread(() -> drain(partition));
+            worker.setName("embedding-worker-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        for (int i = 0; i < partitions.size(); i++) {
+            // jobs a worker was holding are older than anything still in its partition
+            List<EmbeddingJob> remaining = new ArrayList<>();
+            for (EmbeddingJob job; (job = unfinished.get(i).poll()) != null; ) {
+                remaining.add(job);
+            }
+            partitions.get(i).drainTo(remaining);
+            if (!remaining.isEmpty()) {
+                write(remaining);
+            }
+        }
+    }
+
+    /**
+     * Enqueues a document for embedding. When called inside a transaction the job is
+     * only enqueued once that transaction commits, so rolled back writes are never embedded.
+     */
+    public void submit(Document document) {
+        submitAfterCommit(EmbeddingJob.upsert(document));
+    }
+
+    /**
+     * Enqueues the removal of a document, with the same after-commit semantics as {@link #submit}.
+     */
+    public void submitDelete(String documentId) {
+        submitAfterCommit(EmbeddingJob.delete(documentId));
+    }
+
+    public int depth() {
+        int depth = 0;
+        for (BlockingQueue<EmbeddingJob> partition : partitions) {
+            depth += partition.size();
+        }
+        return depth;
+    }
+
+    private void submitAfterCommit(EmbeddingJob job) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(job);
+                }
+            });
+        } else {
+            enqueue(job);
+        }
+    }
+
+    private void enqueue(EmbeddingJob job) {
+        BlockingQueue<EmbeddingJob> partition = partitions.get(Math.floorMod(job.documentId().hashCode(), partitions.size()));
+        try {
+            if (partition.offer(job, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejectedDocuments.increment();
+        log.warn("Embedding queue is full, dropped document {}; the reconciler will write it", job.documentId());
+    }
+
+    private void drain(int partition) {
+        BlockingQueue<EmbeddingJob> queue = partitions.get(partition);
+        List<EmbeddingJob> batch = new ArrayList<>(batchSize);
+        try {
+            while (running) {
+                EmbeddingJob first = queue.take();
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    EmbeddingJob next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // stopping: hand the batch in progress to stop(), which writes it
+            unfinished.get(partition).addAll(batch);
+        }
+    }
+
+    /**
+     * @throws InterruptedException if interrupted while waiting to retry; the batch was not written
+     */
+    private void write(List<EmbeddingJob> batch) throws InterruptedException {
+        Map<String, EmbeddingJob> latestById = new LinkedHashMap<>();
+        for (EmbeddingJob job : batch) {
+            latestById.remove(job.documentId());
+            latestById.put(job.documentId(), job);
+        }
+        List<Document> upserts = new ArrayList<>();
+        List<String> deletes = new ArrayList<>();
+        for (EmbeddingJob job : latestById.values()) {
+            if (job.document() != null) {
+                upserts.add(job.document());
+            } else {
+                deletes.add(job.documentId());
+            }
+        }
+
+        long start = System.nanoTime();
+        if (!writeWithRetries(upserts, deletes)) {
+            failedDocuments.increment(latestById.size());
+            log.error("Dropped {} embedding jobs after {} attempts, the reconciler will rewrite them: {}",
+                    latestById.size(), maxAttempts, latestById.keySet());
+            return;
+        }
+        Set<String> types = new HashSet<>();
+        for (Document document : upserts) {
+            if (document.getMetadata().get("type") instanceof String type) {
+                types.add(type);
+            }
+        }
+        eventPublisher.publishEvent(new VectorStoreChangedEvent(latestById.size(), ingestionStateService.recordVectorStoreWrite(),
+                Set.copyOf(latestById.keySet()), types));
+        batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        batchSizeSummary.record(upserts.size());
+        long now = System.nanoTime();
+        for (EmbeddingJob job : batch) {
+            lagTimer.record(Duration.ofNanos(now - job.enqueuedAt()));
+        }
+    }
+
+    private boolean writeWithRetries(List<Document> upserts, List<String> deletes) throws InterruptedException {
+        long backoff = retryBackoffMillis;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (!upserts.isEmpty()) {
+                    vectorStore.add(upserts);
+                }
+                if (!deletes.isEmpty()) {
+                    vectorStore.delete(deletes);
+                }
+                return true;
+            } catch (Exception e) {
+                if (attempt >= maxAttempts) {
+                    log.error("Failed to write a batch of {} embedding jobs", upserts.size() + deletes.size(), e);
+                    return false;
+                }
+                log.warn("Failed to write a batch of {} embedding jobs (attempt {} of {}), retrying in {} ms: {}",
+                        upserts.size() + deletes.size(), attempt, maxAttempts, backoff, e.getMessage());
+                retries.increment();
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, maxRetryBackoffMillis);
+            }
+        }
+    }
+
+    private record EmbeddingJob(String documentId, Document document, long enqueuedAt) {
+
+        static EmbeddingJob upsert(Document document) {
+            return new EmbeddingJob(document.getId(), document, System.nanoTime());
+        }
+
+        static EmbeddingJob delete(String documentId) {
+            return new EmbeddingJob(documentId, null, System.nanoTime());
+        }
+    }
+
+}
@@ -0,0 +1,424 @@
+package com.breno.intellibuy.services.ai;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical navigable small world graph over unit-length vectors, ranked by cosine distance.
+ * Vectors live in one contiguous {@code float[]} slab addressed by node number; removed nodes are
+ * tombstoned and kept as graph waypoints until the owner rebuilds the index. Not thread-safe.
+ */
+final class HnswIndex {
+
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private float[] vectors;
+    private int[][][] links;
+    private final BitSet deleted = new BitSet();
+    private int size;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    HnswIndex(int dimensions, int m, int efConstruction, int initialCapacity) {
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        int capacity = Math.max(initialCapacity, 16);
+        this.vectors = new float[capacity * dimensions];
+        this.links = new int[capacity][][];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int deletedCount() {
+        return deletedCount;
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    float[] vector(int node) {
+        return Arrays.copyOfRange(vectors, node * dimensions, (node + 1) * dimensions);
+    }
+
+    /**
+     * Inserts a vector and returns its node number. Node numbers are assigned sequentially.
+     */
+    int add(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+        }
+        ensureCapacity(size + 1);
+        int node = size++;
+        normalizeInto(vector, vectors, node * dimensions);
+
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[1 + maxLinks(l)];
+        }
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        int offset = node * dimensions;
+        int ep = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            ep = greedyClosest(vectors, offset, ep, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            long[] candidates = searchLayer(vectors, offset, ep, efConstruction, l, null);
+            int[] selected = selectNeighbors(candidates, maxLinks(l));
+            int[] own = links[node][l];
+            own[0] = selected.length;
+            System.arraycopy(selected, 0, own, 1, selected.length);
+            for (int neighbor : selected) {
+                connect(neighbor, node, l);
+            }
+            ep = nodeOf(candidates[0]);
+        }
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+        return node;
+    }
+
+    void remove(int node) {
+        if (!deleted.get(node)) {
+            deleted.set(node);
+            deletedCount++;
+        }
+    }
+
+    boolean isDeleted(int node) {
+        return deleted.get(node);
+    }
+
+    /**
+     * Returns up to {@code k} live nodes closest to the query, nearest first, encoded as
+     * {@code (distance bits << 32 | node)}. Nodes rejected by {@code accept} still serve as
+     * waypoints, so a selective filter widens the search rather than cutting the graph.
+     */
+    long[] search(float[] query, int k, int ef, IntPredicate accept) {
+        if (entryPoint < 0 || k <= 0) {
+            return new long[0];
+        }
+        float[] q = new float[dimensions];
+        normalizeInto(query, q, 0);
+        int ep = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            ep = greedyClosest(q, 0, ep, l);
+        }
+        IntPredicate live = node -> !deleted.get(node) && (accept == null || accept.test(node));
+        long[] results = searchLayer(q, 0, ep, Math.max(ef, k), 0, live);
+        return results.length > k ? Arrays.copyOf(results, k) : results;
+    }
+
+    /**
+     * Writes the vectors and graph links, so {@link #read} can restore the graph without
+     * re-inserting every node.
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(dimensions);
+        out.writeInt(size);
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+
+        ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+        int total = size * dimensions;
+        for (int i = 0; i < total; ) {
+            int count = Math.min(total - i, chunk.capacity() / Float.BYTES);
+            chunk.clear();
+            chunk.asFloatBuffer().put(vectors, i, count);
+            out.write(chunk.array(), 0, count * Float.BYTES);
+            i += count;
+        }
+
+        for (int node = 0; node < size; node++) {
+            out.writeBoolean(deleted.get(node));
+            int[][] levels = links[node];
+            out.writeInt(levels.length);
+            for (int[] neighbors : levels) {
+                out.writeInt(neighbors[0]);
+                for (int i = 1; i <= neighbors[0]; i++) {
+                    out.writeInt(neighbors[i]);
+                }
+            }
+        }
+    }
+
+    static HnswIndex read(MappedFileReader in, int m, int efConstruction) throws IOException {
+        int dimensions = in.readInt();
+        int size = in.readInt();
+        HnswIndex index = new HnswIndex(dimensions, m, efConstruction, size);
+        index.size = size;
+        index.entryPoint = in.readInt();
+        index.maxLevel = in.readInt();
+        in.readFloats(index.vectors, 0, size * dimensions);
+
+        for (int node = 0; node < size; node++) {
+            if (in.readBoolean()) {
+                index.deleted.set(node);
+                index.deletedCount++;
+            }
+            int[][] levels = new int[in.readInt()][];
+            for (int l = 0; l < levels.length; l++) {
+                int count = in.readInt();
+                levels[l] = new int[1 + Math.max(index.maxLinks(l), count)];
+                levels[l][0] = count;
+                for (int i = 1; i <= count; i++) {
+                    levels[l][i] = in.readInt();
+                }
+            }
+            index.links[node] = levels;
+        }
+        return index;
+    }
+
+    static int nodeOf(long hit) {
+        return (int) hit;
+    }
+
+    static float distanceOf(long hit) {
+        return Float.intBitsToFloat((int) (hit >>> 32));
+    }
+
+    private static long hit(float distance, int node) {
+        return ((long) Float.floatToIntBits(Math.max(distance, 0f)) << 32) | (node & 0xffffffffL);
+    }
+
+    private int maxLinks(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private int greedyClosest(float[] q, int qOffset, int ep, int level) {
+        int best = ep;
+        float bestDistance = distance(q, qOffset, ep);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbors = links[best][level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int candidate = neighbors[i];
+                float d = distance(q, qOffset, candidate);
+                if (d < bestDistance) {
+                    bestDistance = d;
+                    best = candidate;
+                    changed = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    private long[] searchLayer(float[] q, int qOffset, int ep, int ef, int level, IntPredicate accept) {
+        BitSet visited = new BitSet(size);
+        LongHeap candidates = new LongHeap(ef * 2);
+        LongHeap results = new LongHeap(ef + 1);
+
+        visited.set(ep);
+        long start = hit(distance(q, qOffset, ep), ep);
+        candidates.push(start);
+        if (accept == null || accept.test(ep)) {
+            results.push(Long.MAX_VALUE - start);
+        }
+
+        while (candidates.size() > 0) {
+            long current = candidates.pop();
+            if (results.size() >= ef && distanceOf(current) > worst(results)) {
+                break;
+            }
+            int[] neighbors = links[nodeOf(current)].length > level ? links[nodeOf(current)][level] : null;
+            if (neighbors == null) {
+                continue;
+            }
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int neighbor = neighbors[i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float d = distance(q, qOffset, neighbor);
+                if (results.size() < ef || d < worst(results)) {
+                    long candidate = hit(d, neighbor);
+                    candidates.push(candidate);
+                    if (accept == null || accept.test(neighbor)) {
+                        results.push(Long.MAX_VALUE - candidate);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+
+        long[] sorted = new long[results.size()];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = Long.MAX_VALUE - results.pop();
+        }
+        return sorted;
+    }
+
+    private static float worst(LongHeap results) {
+        return distanceOf(Long.MAX_VALUE - results.peek());
+    }
+
+    /**
+     * Neighbour selection heuristic from the HNSW paper: a candidate is kept only if it is closer
+     * to the base than to any neighbour already kept, then the list is topped up with the
+     * nearest of the discarded candidates.
+     */
+    private int[] selectNeighbors(long[] candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.length)];
+        boolean[] taken = new boolean[candidates.length];
+        int count = 0;
+        for (int i = 0; i < candidates.length && count < selected.length; i++) {
+            int candidate = nodeOf(candidates[i]);
+            float toBase = distanceOf(candidates[i]);
+            boolean keep = true;
+            for (int j = 0; j < count; j++) {
+                if (distance(vectors, selected[j] * dimensions, candidate) < toBase) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = candidate;
+                taken[i] = true;
+            }
+        }
+        for (int i = 0; i < candidates.length && count < selected.length; i++) {
+            if (!taken[i]) {
+                selected[count++] = nodeOf(candidates[i]);
+            }
+        }
+        return selected;
+    }
+
+    private void connect(int from, int to, int level) {
+        int[] neighbors = links[from][level];
+        int count = neighbors[0];
+        if (count < neighbors.length - 1) {
+            neighbors[++count] = to;
+            neighbors[0] = count;
+            return;
+        }
+        int offset = from * dimensions;
+        long[] candidates = new long[count + 1];
+        for (int i = 0; i < count; i++) {
+            candidates[i] = hit(distance(vectors, offset, neighbors[i + 1]), neighbors[i + 1]);
+        }
+        candidates[count] = hit(distance(vectors, offset, to), to);
+        Arrays.sort(candidates);
+        int[] selected = selectNeighbors(candidates, neighbors.length - 1);
+        neighbors[0] = selected.length;
+        System.arraycopy(selected, 0, neighbors, 1, selected.length);
+    }
+
+    private float distance(float[] q, int qOffset, int node) {
+        int offset = node * dimensions;
+        float dot = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            dot += q[qOffset + i] * vectors[offset + i];
+        }
+        return 1f - dot;
+    }
+
+    private void ensureCapacity(int nodes) {
+        if (nodes <= links.length) {
+            return;
+        }
+        int capacity = Math.max(nodes, links.length * 2);
+        vectors = Arrays.copyOf(vectors, capacity * dimensions);
+        links = Arrays.copyOf(links, capacity);
+    }
+
+    private static void normalizeInto(float[] vector, float[] target, int offset) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float scale = norm == 0 ? 0f : (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            target[offset + i] = vector[i] * scale;
+        }
+    }
+
+    /**
+     * Binary min-heap of primitive longs, to keep boxing out of the search loop.
+     */
+    private static final class LongHeap {
+
+        private long[] heap;
+        private int size;
+
+        LongHeap(int capacity) {
+            heap = new long[Math.max(capacity, 4)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        long peek() {
+            return heap[0];
+        }
+
+        void push(long value) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= value) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+
+        long pop() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (last <= heap[child]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return top;
+        }
+    }
+
+}
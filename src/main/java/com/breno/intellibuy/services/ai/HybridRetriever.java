@@ -0,0 +1,245 @@
+package com.breno.intellibuy.services.ai;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.annotation.Observed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.pgvector.PgVectorFilterExpressionConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Chat retriever that fuses the vector search with a Postgres full-text search over the same
+ * documents using reciprocal rank fusion, so exact names, CPFs and IDs are found even when
+ * their embedding is not close to the question. Documents named by ID in the question rank
+ * first on the lexical side. An optional rerank then orders the best fused candidates by vector
+ * similarity blended with how many of the question's terms each document contains.
+ */
+@Component
+public class HybridRetriever {
+
+    private static final Logger log = LoggerFactory.getLogger(HybridRetriever.class);
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "the", "and", "for", "what", "which", "who", "how", "does", "did", "has", "have", "are", "was",
+            "with", "from", "that", "this", "any", "all", "there", "their", "about", "most", "many", "much");
+
+    private static final int RERANK_POOL_FACTOR = 3;
+
+    private final VectorStore vectorStore;
+    private final EmbeddingModel embeddingModel;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final PgVectorFilterExpressionConverter filterConverter = new PgVectorFilterExpressionConverter();
+    private final String tableName;
+    private final boolean enabled;
+    private final int candidates;
+    private final int rrfK;
+    private final String textSearchConfig;
+    private final boolean rerankEnabled;
+    private final double lexicalWeight;
+    private final Timer lexicalSearchTimer;
+
+    public HybridRetriever(
+            VectorStore vectorStore,
+            EmbeddingModel embeddingModel,
+            JdbcTemplate jdbcTemplate,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schemaName,
+            @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName,
+            @Value("${intellibuy.ai.retrieval.hybrid.enabled:true}") boolean enabled,
+            @Value("${intellibuy.ai.retrieval.hybrid.candidates:20}") int candidates,
+            @Value("${intellibuy.ai.retrieval.hybrid.rrf-k:60}") int rrfK,
+            @Value("${intellibuy.ai.retrieval.hybrid.text-search-config:english}") String textSearchConfig,
+            @Value("${intellibuy.ai.retrieval.rerank.enabled:true}") boolean rerankEnabled,
+            @Value("${intellibuy.ai.retrieval.rerank.lexical-weight:0.3}") double lexicalWeight) {
+        this.vectorStore = vectorStore;
+        this.embeddingModel = embeddingModel;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.tableName = schemaName + "." + tableName;
+        this.enabled = enabled;
+        this.candidates = candidates;
+        this.rrfK = rrfK;
+        this.textSearchConfig = textSearchConfig;
+        this.rerankEnabled = rerankEnabled;
+        this.lexicalWeight = lexicalWeight;
+        this.lexicalSearchTimer = Timer.builder("intellibuy.retrieval.lexical")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Observed(name = "intellibuy.chat.retrieval", contextualName = "chat-retrieval")
+    public List<Document> retrieve(QueryIntentRouter.RetrievalPlan plan) {
+        if (!enabled) {
+            return vectorStore.similaritySearch(plan.toSearchRequest());
+        }
+        int candidateCount = Math.max(candidates, plan.topK());
+        List<Document> vectorHits = vectorStore.similaritySearch(plan.toSearchRequest(candidateCount));
+        List<Document> lexicalHits = lexicalSearch(plan, candidateCount);
+
+        Map<String, Document> documents = new LinkedHashMap<>();
+        Map<String, Double> fused = new HashMap<>();
+        addRanks(vectorHits, documents, fused);
+        addRanks(lexicalHits, documents, fused);
+
+        List<Document> ranked = new ArrayList<>(documents.values());
+        ranked.sort(Comparator.comparingDouble((Document document) -> fused.get(document.getId())).reversed());
+        if (rerankEnabled) {
+            ranked = rerank(plan.query(), ranked.subList(0, Math.min(ranked.size(), plan.topK() * RERANK_POOL_FACTOR)));
+        }
+
+        // IDs the question names are always kept, whatever the rerank makes of them
+        List<Document> selected = new ArrayList<>(plan.topK());
+        for (Document document : ranked) {
+            if (plan.documentIds().contains(document.getId())) {
+                selected.add(document);
+            }
+        }
+        for (Document document : ranked) {
+            if (selected.size() >= plan.topK()) {
+                break;
+            }
+            if (!plan.documentIds().contains(document.getId())) {
+                selected.add(document);
+            }
+        }
+        return selected;
+    }
+
+    private List<Document> rerank(String query, List<Document> pool) {
+        Set<String> terms = terms(query);
+        Map<String, Double> scores = new HashMap<>();
+        for (Document document : pool) {
+            double similarity = document.getScore() == null ? 0.0 : document.getScore();
+            scores.put(document.getId(), (1 - lexicalWeight) * similarity + lexicalWeight * coverage(terms, document));
+        }
+        List<Document> reranked = new ArrayList<>(pool);
+        reranked.sort(Comparator.comparingDouble((Document document) -> scores.get(document.getId())).reversed());
+        return reranked;
+    }
+
+    private void addRanks(List<Document> hits, Map<String, Document> documents, Map<String, Double> fused) {
+        for (int rank = 0; rank < hits.size(); rank++) {
+            Document document = hits.get(rank);
+            documents.putIfAbsent(document.getId(), document);
+            fused.merge(document.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+        }
+    }
+
+    /**
+     * Full-text search with the question's lexemes OR-ed together, ranked by cover density,
+     * under the same metadata filter as the vector search. The vector distance to the question
+     * is returned as well, so lexical hits can be reranked like vector hits.
+     */
+    private List<Document> lexicalSearch(QueryIntentRouter.RetrievalPlan plan, int limit) {
+        String filter = plan.filter() == null ? "" : " and metadata::jsonb @@ '" + filterConverter.convertExpression(plan.filter()) + "'::jsonpath";
+        String sql = """
+                with q as (
+                    select to_tsquery('simple', string_agg(quote_literal(lexeme), ' | ')) as query
+                    from unnest(tsvector_to_array(to_tsvector(cast(? as regconfig), ?))) as lexeme
+                )
+                select d.id::text as id, d.content, d.metadata::text as metadata,
+                       d.embedding <=> cast(? as vector) as distance
+                from %s d, q
+                where (d.content_tsv @@ q.query or d.id::text = any(cast(? as text[])))%s
+                order by d.id::text = any(cast(? as text[])) desc, ts_rank_cd(d.content_tsv, q.query) desc nulls last
+                limit ?""".formatted(tableName, filter);
+        String documentIds = "{" + String.join(",", plan.documentIds()) + "}";
+
+        try {
+            String queryVector = toVectorLiteral(embeddingModel.embed(plan.query()));
+            return lexicalSearchTimer.record(() -> jdbcTemplate.query(sql, (rs, rowNum) -> {
+                        float distance = rs.getFloat("distance");
+                        Map<String, Object> metadata = new HashMap<>(readMetadata(rs.getString("metadata")));
+                        metadata.put("distance", distance);
+                        return Document.builder()
+                                .id(rs.getString("id"))
+                                .text(rs.getString("content"))
+                                .metadata(metadata)
+                                .score(1.0 - distance)
+                                .build();
+                    },
+                    textSearchConfig, plan.query(), queryVector, documentIds, documentIds, limit));
+        } catch (DataAccessException e) {
+            log.warn("Full-text search failed, using vector results only: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    private Map<String, Object> readMetadata(String json) {
+        try {
+            return objectMapper.readValue(json, new TypeReference<>() {
+            });
+        } catch (JsonProcessingException e) {
+            return Map.of();
+        }
+    }
+
+    private static String toVectorLiteral(float[] vector) {
+        StringBuilder literal = new StringBuilder(vector.length * 10).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                literal.append(',');
+            }
+            literal.append(vector[i]);
+        }
+        return literal.append(']').toString();
+    }
+
+    /**
+     * Share of the question's terms found in the document, with terms containing digits (IDs,
+     * CPFs, phone numbers) counting double since they identify a single row.
+     */
+    private static double coverage(Set<String> terms, Document document) {
+        if (terms.isEmpty()) {
+            return 0.0;
+        }
+        Set<String> words = terms(document.getText());
+        double total = 0;
+        double found = 0;
+        for (String term : terms) {
+            double weight = term.chars().anyMatch(Character::isDigit) ? 2.0 : 1.0;
+            total += weight;
+            if (words.contains(term)) {
+                found += weight;
+            }
+        }
+        return found / total;
+    }
+
+    private static Set<String> terms(String text) {
+        Set<String> terms = new HashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            boolean identifier = word.chars().anyMatch(Character::isDigit);
+            if (identifier || (word.length() >= 3 && !STOP_WORDS.contains(word))) {
+                terms.add(word);
+            }
+        }
+        return terms;
+    }
+
+}
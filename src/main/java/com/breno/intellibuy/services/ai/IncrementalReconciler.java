@@ -0,0 +1,235 @@
+package com.breno.intellibuy.services.ai;
+
+import com.breno.intellibuy.dto.ChangeMarker;
+import com.breno.intellibuy.model.EntityDeletion;
+import com.breno.intellibuy.model.SyncWatermark;
+import com.breno.intellibuy.repository.CustomerRepository;
+import com.breno.intellibuy.repository.EntityDeletionRepository;
+import com.breno.intellibuy.repository.ProductRepository;
+import com.breno.intellibuy.repository.PurchaseRepository;
+import com.breno.intellibuy.repository.SyncWatermarkRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Periodically brings the vector store in line with the tables. Rows whose {@code updated_at} has
+ * moved past the per-entity watermark are re-embedded, and rows logged in {@code entity_deletions}
+ * lose their vectors, in bounded batches. Changes younger than the safety lag are left for the next
+ * run, so a transaction that commits late with an older timestamp is not skipped.
+ */
+@Service
+public class IncrementalReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(IncrementalReconciler.class);
+
+    private static final LocalDateTime BEGINNING = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    // larger runs are reported as a change to any document
+    private static final int MAX_REPORTED_DOCUMENT_IDS = 10_000;
+
+    private final ProductRepository productRepository;
+    private final CustomerRepository customerRepository;
+    private final PurchaseRepository purchaseRepository;
+    private final SyncWatermarkRepository watermarkRepository;
+    private final EntityDeletionRepository deletionRepository;
+    private final EmbeddingDocumentFactory documentFactory;
+    private final VectorStore vectorStore;
+    private final IngestionStateService ingestionStateService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JdbcTemplate jdbcTemplate;
+    private final TaskScheduler taskScheduler;
+    private final ReentrantLock running = new ReentrantLock();
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration safetyLag;
+    private final Counter upserted;
+    private final Counter deleted;
+
+    public IncrementalReconciler(
+            ProductRepository productRepository,
+            CustomerRepository customerRepository,
+            PurchaseRepository purchaseRepository,
+            SyncWatermarkRepository watermarkRepository,
+            EntityDeletionRepository deletionRepository,
+            EmbeddingDocumentFactory documentFactory,
+            VectorStore vectorStore,
+            IngestionStateService ingestionStateService,
+            ApplicationEventPublisher eventPublisher,
+            JdbcTemplate jdbcTemplate,
+            TaskScheduler taskScheduler,
+            MeterRegistry meterRegistry,
+            @Value("${intellibuy.reconciler.enabled:true}") boolean enabled,
+            @Value("${intellibuy.reconciler.batch-size:200}") int batchSize,
+            @Value("${intellibuy.reconciler.safety-lag:PT30S}") Duration safetyLag) {
+        this.productRepository = productRepository;
+        this.customerRepository = customerRepository;
+        this.purchaseRepository = purchaseRepository;
+        this.watermarkRepository = watermarkRepository;
+        this.deletionRepository = deletionRepository;
+        this.documentFactory = documentFactory;
+        this.vectorStore = vectorStore;
+        this.ingestionStateService = ingestionStateService;
+        this.eventPublisher = eventPublisher;
+        this.jdbcTemplate = jdbcTemplate;
+        this.taskScheduler = taskScheduler;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.safetyLag = safetyLag;
+        this.upserted = Counter.builder("intellibuy.reconciler.documents")
+                .tag("action", "upserted")
+                .register(meterRegistry);
+        this.deleted = Counter.builder("intellibuy.reconciler.documents")
+                .tag("action", "deleted")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${intellibuy.reconciler.interval:PT5M}",
+            initialDelayString = "${intellibuy.reconciler.initial-delay:PT1M}")
+    public void reconcile() {
+        if (!enabled || !ingestionStateService.isInitialIngestionComplete() || !running.tryLock()) {
+            return;
+        }
+        try {
+            reconcileChanges();
+        } finally {
+            running.unlock();
+        }
+    }
+
+    /**
+     * Schedules a run once the safety lag has passed, for writers that change many rows at once
+     * and should not wait for the next interval.
+     */
+    public void requestRun() {
+        if (enabled) {
+            taskScheduler.schedule(this::reconcile, Instant.now().plus(safetyLag).plusSeconds(1));
+        }
+    }
+
+    private void reconcileChanges() {
+        long started = System.nanoTime();
+        LocalDateTime until = databaseNow().minus(safetyLag);
+        Set<String> documentIds = new HashSet<>();
+        Set<String> types = new HashSet<>();
+
+        int upserts = reconcile("product",
+                (since, id) -> productRepository.findChangedAfter(since, id, until, Limit.of(batchSize)),
+                productRepository::findAllById,
+                documentFactory::productDocument,
+                documentIds, types);
+        upserts += reconcile("customer",
+                (since, id) -> customerRepository.findChangedAfter(since, id, until, Limit.of(batchSize)),
+                customerRepository::findAllById,
+                documentFactory::customerDocument,
+                documentIds, types);
+        upserts += reconcile("purchase",
+                (since, id) -> purchaseRepository.findChangedAfter(since, id, until, Limit.of(batchSize)),
+                purchaseRepository::findByIdInOrderByIdAsc,
+                documentFactory::purchaseDocument,
+                documentIds, types);
+        int deletes = reconcileDeletions(documentIds);
+
+        if (upserts + deletes > 0) {
+            long version = ingestionStateService.recordVectorStoreWrite();
+            eventPublisher.publishEvent(documentIds.size() > MAX_REPORTED_DOCUMENT_IDS
+                    ? new VectorStoreChangedEvent(upserts + deletes, version)
+                    : new VectorStoreChangedEvent(upserts + deletes, version, documentIds, types));
+            log.info("Reconciled vector store: {} upserted, {} deleted in {} ms",
+                    upserts, deletes, (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+
+    /**
+     * Records that a full ingestion starting at {@code ingestionStarted} has embedded every row,
+     * so the first reconciliation only picks up what changed after that.
+     */
+    public void startFrom(LocalDateTime ingestionStarted) {
+        LocalDateTime changedThrough = ingestionStarted.minus(safetyLag);
+        for (String entityType : QueryIntentRouter.ENTITY_TYPES) {
+            watermarkRepository.save(new SyncWatermark(entityType, changedThrough, 0L, LocalDateTime.now()));
+        }
+    }
+
+    public LocalDateTime databaseNow() {
+        return jdbcTemplate.queryForObject("select localtimestamp", LocalDateTime.class);
+    }
+
+    private <T> int reconcile(
+            String entityType,
+            BiFunction<LocalDateTime, Long, List<ChangeMarker>> changedAfter,
+            Function<List<Long>, List<T>> loadByIds,
+            Function<T, Document> toDocument,
+            Set<String> documentIds,
+            Set<String> types) {
+
+        SyncWatermark watermark = watermarkRepository.findById(entityType)
+                .orElseGet(() -> new SyncWatermark(entityType, BEGINNING, 0L, null));
+        int total = 0;
+
+        List<ChangeMarker> changes = changedAfter.apply(watermark.getChangedThrough(), watermark.getLastId());
+        while (!changes.isEmpty()) {
+            List<T> rows = loadByIds.apply(changes.stream().map(ChangeMarker::id).toList());
+            List<Document> documents = rows.stream().map(toDocument).toList();
+            if (!documents.isEmpty()) {
+                vectorStore.add(documents);
+                documents.forEach(document -> documentIds.add(document.getId()));
+                types.add(entityType);
+                upserted.increment(documents.size());
+                total += documents.size();
+            }
+
+            ChangeMarker last = changes.get(changes.size() - 1);
+            watermark.setChangedThrough(last.updatedAt());
+            watermark.setLastId(last.id());
+            watermark.setUpdatedAt(LocalDateTime.now());
+            watermarkRepository.save(watermark);
+
+            changes = changes.size() < batchSize
+                    ? List.of()
+                    : changedAfter.apply(last.updatedAt(), last.id());
+        }
+        return total;
+    }
+
+    private int reconcileDeletions(Set<String> documentIds) {
+        int total = 0;
+        List<EntityDeletion> deletions = deletionRepository.findByOrderByIdAsc(Limit.of(batchSize));
+        while (!deletions.isEmpty()) {
+            List<String> deletedIds = deletions.stream()
+                    .map(deletion -> EmbeddingDocumentFactory.documentId(deletion.getEntityType(), deletion.getEntityId()))
+                    .toList();
+            vectorStore.delete(deletedIds);
+            documentIds.addAll(deletedIds);
+            deletionRepository.deleteAllInBatch(deletions);
+            deleted.increment(deletions.size());
+            total += deletions.size();
+
+            deletions = deletions.size() < batchSize
+                    ? List.of()
+                    : deletionRepository.findByOrderByIdAsc(Limit.of(batchSize));
+        }
+        return total;
+    }
+
+}
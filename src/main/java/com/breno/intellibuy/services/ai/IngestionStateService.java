@@ -0,0 +1,108 @@
+package com.breno.intellibuy.services.ai;
+
+import com.breno.intellibuy.model.IngestionState;
+import com.breno.intellibuy.repository.IngestionStateRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * Keeps the {@code ingestion_state} row: whether the initial bulk ingestion has completed, and a
+ * version counter advanced on every vector store write. Nodes compare the counter with the version
+ * recorded in their local index snapshot to tell whether the snapshot is still current.
+ */
+@Service
+public class IngestionStateService {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestionStateService.class);
+
+    private static final String STATE = "vector_store";
+    private static final String LEGACY_INGESTION_FLAG = "initial_ingestion_complete_v1";
+
+    private final IngestionStateRepository ingestionStateRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final VectorStore vectorStore;
+    private final TransactionTemplate transactionTemplate;
+    private final String vectorTable;
+
+    public IngestionStateService(
+            IngestionStateRepository ingestionStateRepository,
+            JdbcTemplate jdbcTemplate,
+            @Lazy VectorStore vectorStore,
+            PlatformTransactionManager transactionManager,
+            @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schemaName,
+            @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName) {
+        this.ingestionStateRepository = ingestionStateRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.vectorStore = vectorStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.vectorTable = schemaName + "." + tableName;
+    }
+
+    /**
+     * Also recognises databases ingested before this table existed, which carry a flag document
+     * in the vector store instead; the flag is migrated into the table and the document removed.
+     */
+    public boolean isInitialIngestionComplete() {
+        boolean complete = ingestionStateRepository.findById(STATE)
+                .map(IngestionState::getInitialIngestionCompletedAt)
+                .isPresent();
+        if (complete) {
+            return true;
+        }
+        if (!hasLegacyFlagDocument()) {
+            return false;
+        }
+        log.info("Migrating the legacy ingestion flag document to the ingestion_state table");
+        markInitialIngestionComplete();
+        vectorStore.delete(new FilterExpressionBuilder().eq("ingestion_flag", LEGACY_INGESTION_FLAG).build());
+        return true;
+    }
+
+    public void markInitialIngestionComplete() {
+        transactionTemplate.executeWithoutResult(status -> {
+            ingestionStateRepository.insertIfMissing(STATE);
+            ingestionStateRepository.markInitialIngestionCompleted(STATE, LocalDateTime.now());
+        });
+    }
+
+    public long vectorStoreVersion() {
+        Long version = ingestionStateRepository.findVectorStoreVersion(STATE);
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * Advances the vector store version after a write and returns the new value, or {@code -1}
+     * if it could not be recorded, which readers must treat as "unknown".
+     */
+    public long recordVectorStoreWrite() {
+        try {
+            Long version = transactionTemplate.execute(status -> {
+                ingestionStateRepository.insertIfMissing(STATE);
+                ingestionStateRepository.incrementVectorStoreVersion(STATE, LocalDateTime.now());
+                return ingestionStateRepository.findVectorStoreVersion(STATE);
+            });
+            return version == null ? -1 : version;
+        } catch (RuntimeException e) {
+            log.warn("Could not advance the vector store version: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    private boolean hasLegacyFlagDocument() {
+        Boolean exists = jdbcTemplate.queryForObject(
+                "select exists (select 1 from " + vectorTable + " where metadata->>'ingestion_flag' = ?)",
+                Boolean.class, LEGACY_INGESTION_FLAG);
+        return Boolean.TRUE.equals(exists);
+    }
+
+}
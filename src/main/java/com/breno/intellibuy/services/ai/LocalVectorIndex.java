@@ -0,0 +1,160 @@
+package com.breno.intellibuy.services.ai;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Documents keyed by ID on top of an {@link HnswIndex}. An update tombstones the old node and
+ * inserts a new one; {@link #compacted()} rebuilds the graph without tombstones. Not thread-safe.
+ */
+final class LocalVectorIndex {
+
+    private final HnswIndex graph;
+    private final int m;
+    private final int efConstruction;
+    private final List<Entry> entries;
+    private final Map<String, Integer> nodeById;
+
+    LocalVectorIndex(int dimensions, int m, int efConstruction, int initialCapacity) {
+        this(new HnswIndex(dimensions, m, efConstruction, initialCapacity), m, efConstruction);
+    }
+
+    private LocalVectorIndex(HnswIndex graph, int m, int efConstruction) {
+        this.graph = graph;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.entries = new ArrayList<>(graph.size());
+        this.nodeById = new HashMap<>(graph.size() * 2);
+    }
+
+    int size() {
+        return nodeById.size();
+    }
+
+    int tombstones() {
+        return graph.deletedCount();
+    }
+
+    int dimensions() {
+        return graph.dimensions();
+    }
+
+    void upsert(String id, String text, Map<String, Object> metadata, float[] vector) {
+        remove(id);
+        int node = graph.add(vector);
+        entries.add(new Entry(id, text, metadata));
+        nodeById.put(id, node);
+    }
+
+    boolean remove(String id) {
+        Integer node = nodeById.remove(id);
+        if (node == null) {
+            return false;
+        }
+        graph.remove(node);
+        entries.set(node, null);
+        return true;
+    }
+
+    List<Document> search(float[] query, int topK, double similarityThreshold, Filter.Expression filter, int ef) {
+        long[] hits = graph.search(query, topK, ef,
+                filter == null ? null : node -> MetadataFilterEvaluator.matches(filter, entries.get(node).metadata()));
+
+        List<Document> documents = new ArrayList<>(hits.length);
+        for (long hit : hits) {
+            float distance = HnswIndex.distanceOf(hit);
+            double score = 1.0 - distance;
+            if (score < similarityThreshold) {
+                break;
+            }
+            Entry entry = entries.get(HnswIndex.nodeOf(hit));
+            Map<String, Object> metadata = new HashMap<>(entry.metadata());
+            metadata.put("distance", distance);
+            documents.add(Document.builder()
+                    .id(entry.id())
+                    .text(entry.text())
+                    .metadata(metadata)
+                    .score(score)
+                    .build());
+        }
+        return documents;
+    }
+
+    List<String> idsMatching(Filter.Expression filter) {
+        List<String> ids = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry != null && MetadataFilterEvaluator.matches(filter, entry.metadata())) {
+                ids.add(entry.id());
+            }
+        }
+        return ids;
+    }
+
+    void forEach(EntryConsumer consumer) {
+        for (int node = 0; node < entries.size(); node++) {
+            Entry entry = entries.get(node);
+            if (entry != null) {
+                consumer.accept(entry.id(), entry.text(), entry.metadata(), graph.vector(node));
+            }
+        }
+    }
+
+    LocalVectorIndex compacted() {
+        LocalVectorIndex compacted = new LocalVectorIndex(graph.dimensions(), m, efConstruction, size());
+        forEach(compacted::upsert);
+        return compacted;
+    }
+
+    void write(DataOutputStream out, ObjectMapper objectMapper) throws IOException {
+        graph.write(out);
+        for (Entry entry : entries) {
+            out.writeBoolean(entry != null);
+            if (entry != null) {
+                writeString(out, entry.id());
+                writeString(out, entry.text());
+                writeString(out, objectMapper.writeValueAsString(entry.metadata()));
+            }
+        }
+    }
+
+    static LocalVectorIndex read(MappedFileReader in, int m, int efConstruction, ObjectMapper objectMapper) throws IOException {
+        LocalVectorIndex index = new LocalVectorIndex(HnswIndex.read(in, m, efConstruction), m, efConstruction);
+        TypeReference<Map<String, Object>> metadataType = new TypeReference<>() {
+        };
+        for (int node = 0; node < index.graph.size(); node++) {
+            if (!in.readBoolean()) {
+                index.entries.add(null);
+                continue;
+            }
+            Entry entry = new Entry(in.readString(), in.readString(), objectMapper.readValue(in.readString(), metadataType));
+            index.entries.add(entry);
+            index.nodeById.put(entry.id(), node);
+        }
+        return index;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(String id, String text, Map<String, Object> metadata, float[] vector);
+    }
+
+    private record Entry(String id, String text, Map<String, Object> metadata) {
+    }
+
+}
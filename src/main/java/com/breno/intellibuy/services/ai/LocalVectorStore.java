@@ -0,0 +1,535 @@
+package com.breno.intellibuy.services.ai;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process HNSW copy of the pgvector store. Writes go to pgvector first and are then mirrored
+ * into the local index, so pgvector stays the source of truth; searches are answered from memory.
+ * <p>
+ * The index is snapshotted to disk together with the vector store version it reflects. On startup
+ * a snapshot whose version matches {@code ingestion_state} is used as is, so a node comes up warm
+ * without reading the vector table; otherwise the index is rebuilt from pgvector in the
+ * background. This node's writes advance the version the index reflects once every version below
+ * them has been seen, since concurrent writers publish their versions out of order. A version that
+ * stays missing belongs to another node's write; the periodic version check notices it and
+ * triggers a rebuild. Whenever the index is not known to match the current version, searches fall
+ * through to pgvector.
+ */
+@Primary
+@Component
+@ConditionalOnProperty(name = "intellibuy.vectorstore.local.enabled", havingValue = "true")
+public class LocalVectorStore implements VectorStore {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalVectorStore.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x49425653;
+    private static final int SNAPSHOT_FORMAT = 2;
+    private static final long UNKNOWN_VERSION = -1;
+    private static final int REBUILD_PAGE_SIZE = 1000;
+    private static final int MIN_TOMBSTONES_BEFORE_COMPACTION = 1000;
+    private static final int MAX_VERSIONS_AHEAD = 10_000;
+
+    private final PgVectorStore delegate;
+    private final IngestionStateService ingestionStateService;
+    private final EmbeddingModel embeddingModel;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final ThreadFactory threadFactory;
+    private final String tableName;
+    private final int dimensions;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final Path snapshotPath;
+    private final Timer searchTimer;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private LocalVectorIndex index;
+    private Map<String, StoredDocument> changedDuringRebuild;
+    private List<Long> versionsDuringRebuild;
+    private volatile long syncedVersion = UNKNOWN_VERSION;
+    private final TreeSet<Long> versionsAhead = new TreeSet<>();
+    private long versionAheadAtLastCheck = UNKNOWN_VERSION;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private volatile boolean ready;
+
+    public LocalVectorStore(
+            PgVectorStore delegate,
+            IngestionStateService ingestionStateService,
+            EmbeddingModel embeddingModel,
+            JdbcTemplate jdbcTemplate,
+            ObjectMapper objectMapper,
+            ThreadFactory workerThreadFactory,
+            MeterRegistry meterRegistry,
+            @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schemaName,
+            @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName,
+            @Value("${spring.ai.vectorstore.pgvector.dimension:768}") int dimensions,
+            @Value("${intellibuy.vectorstore.local.m:16}") int m,
+            @Value("${intellibuy.vectorstore.local.ef-construction:200}") int efConstruction,
+            @Value("${intellibuy.vectorstore.local.ef-search:100}") int efSearch,
+            @Value("${intellibuy.vectorstore.local.snapshot-path:data/vector-index.bin}") Path snapshotPath) {
+        this.delegate = delegate;
+        this.ingestionStateService = ingestionStateService;
+        this.embeddingModel = embeddingModel;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.threadFactory = workerThreadFactory;
+        this.tableName = schemaName + "." + tableName;
+        this.dimensions = dimensions;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.snapshotPath = snapshotPath;
+        this.index = newIndex(1024);
+
+        Gauge.builder("intellibuy.vectorstore.local.size", this, LocalVectorStore::size)
+                .description("Documents held in the in-process vector index")
+                .register(meterRegistry);
+        this.searchTimer = Timer.builder("intellibuy.vectorstore.local.search")
+                .description("Similarity searches answered from the in-process vector index")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        long currentVersion = ingestionStateService.vectorStoreVersion();
+        if (Files.exists(snapshotPath)) {
+            long started = System.nanoTime();
+            try {
+                Snapshot snapshot = readSnapshot();
+                lock.writeLock().lock();
+                try {
+                    replaceIndex(snapshot.index());
+                    resetVersion(snapshot.version() == currentVersion ? currentVersion : UNKNOWN_VERSION);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                log.info("Loaded {} vectors from snapshot {} at version {} in {} ms", snapshot.index().size(),
+                        snapshotPath, snapshot.version(), (System.nanoTime() - started) / 1_000_000);
+                if (snapshot.version() == currentVersion) {
+                    return;
+                }
+                log.info("Snapshot is behind vector store version {}, rebuilding from pgvector", currentVersion);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Ignoring unreadable vector index snapshot {}: {}", snapshotPath, e.getMessage());
+            }
+        }
+        startRebuild();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ready) {
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * Records the version of a write made through this node. Writers on different threads publish
+     * their versions in any order, so the index only vouches for the highest version up to which
+     * none is missing.
+     */
+    @EventListener
+    public void onVectorStoreChanged(VectorStoreChangedEvent event) {
+        boolean diverged;
+        lock.writeLock().lock();
+        try {
+            if (versionsDuringRebuild != null) {
+                versionsDuringRebuild.add(event.version());
+                return;
+            }
+            diverged = !recordVersion(event.version());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (diverged) {
+            log.info("Lost track of the vector store version at {}, rebuilding", event.version());
+            startRebuild();
+        }
+    }
+
+    /**
+     * Compares the index with the current vector store version, to catch writes of other nodes
+     * while this one is not writing. A version ahead of the index may belong to a write of this
+     * node whose event is still on its way, so the index is only declared stale when it has not
+     * caught up with that version by the next check.
+     */
+    @Scheduled(fixedDelayString = "${intellibuy.vectorstore.local.sync-check-interval:PT10S}",
+            initialDelayString = "${intellibuy.vectorstore.local.sync-check-interval:PT10S}")
+    public void checkVersion() {
+        if (rebuilding.get()) {
+            return;
+        }
+        long currentVersion = ingestionStateService.vectorStoreVersion();
+        boolean stale;
+        lock.writeLock().lock();
+        try {
+            if (syncedVersion == UNKNOWN_VERSION) {
+                stale = true;
+            } else if (currentVersion > syncedVersion) {
+                stale = versionAheadAtLastCheck != UNKNOWN_VERSION && syncedVersion < versionAheadAtLastCheck;
+                versionAheadAtLastCheck = currentVersion;
+            } else {
+                stale = false;
+                versionAheadAtLastCheck = UNKNOWN_VERSION;
+            }
+            if (stale) {
+                resetVersion(UNKNOWN_VERSION);
+                versionAheadAtLastCheck = UNKNOWN_VERSION;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (stale) {
+            log.info("Local vector index is behind vector store version {}, rebuilding", currentVersion);
+            startRebuild();
+        }
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+        List<StoredDocument> stored = loadByIds(documents.stream().map(Document::getId).toList());
+        lock.writeLock().lock();
+        try {
+            for (StoredDocument document : stored) {
+                index.upsert(document.id(), document.text(), document.metadata(), document.vector());
+                if (changedDuringRebuild != null) {
+                    changedDuringRebuild.put(document.id(), document);
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(List<String> ids) {
+        delegate.delete(ids);
+        removeLocally(ids);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+        List<String> ids;
+        lock.readLock().lock();
+        try {
+            ids = index.idsMatching(filterExpression);
+        } finally {
+            lock.readLock().unlock();
+        }
+        removeLocally(ids);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        if (!ready || syncedVersion == UNKNOWN_VERSION) {
+            return delegate.similaritySearch(request);
+        }
+        float[] query = embeddingModel.embed(request.getQuery());
+        return searchTimer.record(() -> {
+            lock.readLock().lock();
+            try {
+                return index.search(query, request.getTopK(), request.getSimilarityThreshold(),
+                        request.getFilterExpression(), efSearch);
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    private void startRebuild() {
+        if (!rebuilding.get()) {
+            threadFactory.newThread(this::rebuild).start();
+        }
+    }
+
+    /**
+     * Reloads the whole index from pgvector without blocking searches. Writes made while the
+     * table is being read are recorded and replayed onto the new index before it is swapped in.
+     * Does nothing if a rebuild is already running.
+     */
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            rebuildIndex();
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    private void rebuildIndex() {
+        long started = System.nanoTime();
+        long baseVersion;
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = new HashMap<>();
+            versionsDuringRebuild = new ArrayList<>();
+            baseVersion = ingestionStateService.vectorStoreVersion();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            LocalVectorIndex fresh = newIndex(1024);
+            String lastId = "00000000-0000-0000-0000-000000000000";
+            List<StoredDocument> page = loadPageAfter(lastId);
+            while (!page.isEmpty()) {
+                for (StoredDocument document : page) {
+                    fresh.upsert(document.id(), document.text(), document.metadata(), document.vector());
+                }
+                lastId = page.get(page.size() - 1).id();
+                page = loadPageAfter(lastId);
+            }
+
+            lock.writeLock().lock();
+            try {
+                changedDuringRebuild.forEach((id, document) -> {
+                    fresh.remove(id);
+                    if (document != null) {
+                        fresh.upsert(id, document.text(), document.metadata(), document.vector());
+                    }
+                });
+                replaceIndex(fresh);
+                resetVersion(baseVersion);
+                applyVersionsSeenDuringRebuild();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Rebuilt local vector index with {} vectors in {} ms",
+                    fresh.size(), (System.nanoTime() - started) / 1_000_000);
+            writeSnapshot();
+        } catch (RuntimeException e) {
+            log.warn("Could not rebuild local vector index from pgvector, searches stay on pgvector until the next attempt: {}",
+                    e.getMessage());
+        } finally {
+            lock.writeLock().lock();
+            try {
+                changedDuringRebuild = null;
+                if (versionsDuringRebuild != null) {
+                    applyVersionsSeenDuringRebuild();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void applyVersionsSeenDuringRebuild() {
+        List<Long> versions = versionsDuringRebuild;
+        versionsDuringRebuild = null;
+        for (long version : versions) {
+            recordVersion(version);
+        }
+    }
+
+    /**
+     * Adds a version written through this node and advances the synced version over every
+     * contiguous version seen so far. Returns {@code false} if the index could vouch for a version
+     * before but no longer can. Call with the write lock held.
+     */
+    private boolean recordVersion(long version) {
+        if (syncedVersion == UNKNOWN_VERSION || (version != UNKNOWN_VERSION && version <= syncedVersion)) {
+            return true;
+        }
+        if (version == UNKNOWN_VERSION || versionsAhead.size() >= MAX_VERSIONS_AHEAD) {
+            resetVersion(UNKNOWN_VERSION);
+            return false;
+        }
+        versionsAhead.add(version);
+        long synced = syncedVersion;
+        while (!versionsAhead.isEmpty() && versionsAhead.first() == synced + 1) {
+            synced = versionsAhead.pollFirst();
+        }
+        syncedVersion = synced;
+        return true;
+    }
+
+    private void resetVersion(long version) {
+        syncedVersion = version;
+        versionsAhead.clear();
+    }
+
+    private int size() {
+        return index.size();
+    }
+
+    private LocalVectorIndex newIndex(int initialCapacity) {
+        return new LocalVectorIndex(dimensions, m, efConstruction, initialCapacity);
+    }
+
+    private void replaceIndex(LocalVectorIndex replacement) {
+        lock.writeLock().lock();
+        try {
+            index = replacement;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeLocally(List<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                index.remove(id);
+                if (changedDuringRebuild != null) {
+                    changedDuringRebuild.put(id, null);
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tombstoned nodes still cost a distance computation when traversed, so once they make up a
+     * quarter of the graph it is rebuilt from the live entries.
+     */
+    private void compactIfNeeded() {
+        int tombstones = index.tombstones();
+        if (tombstones >= MIN_TOMBSTONES_BEFORE_COMPACTION && tombstones * 4 >= index.size() + tombstones) {
+            index = index.compacted();
+        }
+    }
+
+    private List<StoredDocument> loadPageAfter(String lastId) {
+        return jdbcTemplate.query(
+                "SELECT id::text AS id, content, metadata::text AS metadata, embedding::text AS embedding FROM "
+                        + tableName + " WHERE id > ?::uuid ORDER BY id LIMIT ?",
+                this::mapRow, lastId, REBUILD_PAGE_SIZE);
+    }
+
+    private List<StoredDocument> loadByIds(List<String> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(
+                "SELECT id::text AS id, content, metadata::text AS metadata, embedding::text AS embedding FROM "
+                        + tableName + " WHERE id = ANY(?::uuid[])",
+                this::mapRow, (Object) ids.toArray(String[]::new));
+    }
+
+    private StoredDocument mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new StoredDocument(
+                rs.getString("id"),
+                rs.getString("content"),
+                parseMetadata(rs.getString("metadata")),
+                parseVector(rs.getString("embedding")));
+    }
+
+    private Map<String, Object> parseMetadata(String json) {
+        if (json == null) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(json, new TypeReference<Map<String, Object>>() {
+            });
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable document metadata: " + json, e);
+        }
+    }
+
+    /**
+     * Parses pgvector's text form, {@code [0.1,0.2,...]}.
+     */
+    private static float[] parseVector(String text) {
+        String[] parts = text.substring(1, text.length() - 1).split(",");
+        float[] vector = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            vector[i] = Float.parseFloat(parts[i]);
+        }
+        return vector;
+    }
+
+    /**
+     * Format: magic, format, dimensions, the vector store version the index reflects, then the
+     * index itself. Written to a temporary file and renamed, so readers never see a partial file.
+     */
+    private void writeSnapshot() {
+        try {
+            Path parent = snapshotPath.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, "vector-index", ".tmp");
+            lock.readLock().lock();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_FORMAT);
+                out.writeInt(dimensions);
+                out.writeLong(syncedVersion);
+                index.write(out, objectMapper);
+            } finally {
+                lock.readLock().unlock();
+            }
+            Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not write vector index snapshot {}: {}", snapshotPath, e.getMessage());
+        }
+    }
+
+    private Snapshot readSnapshot() throws IOException {
+        try (MappedFileReader in = new MappedFileReader(snapshotPath)) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_FORMAT) {
+                throw new IOException("not a format " + SNAPSHOT_FORMAT + " vector index snapshot");
+            }
+            int snapshotDimensions = in.readInt();
+            if (snapshotDimensions != dimensions) {
+                throw new IOException("snapshot has " + snapshotDimensions + " dimensions, expected " + dimensions);
+            }
+            long version = in.readLong();
+            return new Snapshot(LocalVectorIndex.read(in, m, efConstruction, objectMapper), version);
+        }
+    }
+
+    private record Snapshot(LocalVectorIndex index, long version) {
+    }
+
+    private record StoredDocument(String id, String text, Map<String, Object> metadata, float[] vector) {
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.breno.intellibuy.services.ai;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sequential big-endian reader over a memory-mapped file, the read side of a
+ * {@link java.io.DataOutputStream}. The file is mapped in windows so it may exceed 2 GB.
+ */
+final class MappedFileReader implements AutoCloseable {
+
+    private static final long WINDOW_BYTES = 64L << 20;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    MappedFileReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        map(0, 0);
+    }
+
+    int readInt() throws IOException {
+        require(Integer.BYTES);
+        return window.getInt();
+    }
+
+    long readLong() throws IOException {
+        require(Long.BYTES);
+        return window.getLong();
+    }
+
+    boolean readBoolean() throws IOException {
+        require(1);
+        return window.get() != 0;
+    }
+
+    void readFloats(float[] target, int offset, int length) throws IOException {
+        while (length > 0) {
+            require(Float.BYTES);
+            int count = Math.min(length, window.remaining() / Float.BYTES);
+            window.asFloatBuffer().get(target, offset, count);
+            window.position(window.position() + count * Float.BYTES);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    String readString() throws IOException {
+        int length = readInt();
+        require(length);
+        byte[] bytes = new byte[length];
+        window.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void require(int bytes) throws IOException {
+        if (window.remaining() >= bytes) {
+            return;
+        }
+        long position = windowStart + window.position();
+        if (position + bytes > fileSize) {
+            throw new EOFException("Unexpected end of " + fileSize + " byte file at offset " + position);
+        }
+        map(position, bytes);
+    }
+
+    private void map(long position, int minimumBytes) throws IOException {
+        long length = Math.min(Math.max(WINDOW_BYTES, minimumBytes), fileSize - position);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        windowStart = position;
+    }
+
+}
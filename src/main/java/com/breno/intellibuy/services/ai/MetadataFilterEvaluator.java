@@ -0,0 +1,87 @@
+package com.breno.intellibuy.services.ai;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+
+/**
+ * Evaluates a portable filter expression against a document's metadata, with the semantics the
+ * pgvector store gives the same expression: numbers compare numerically, everything else by its
+ * string form, so ISO dates order correctly.
+ */
+final class MetadataFilterEvaluator {
+
+    private MetadataFilterEvaluator() {
+    }
+
+    static boolean matches(Filter.Expression expression, Map<String, Object> metadata) {
+        return switch (expression.type()) {
+            case AND -> matches(operand(expression.left()), metadata) && matches(operand(expression.right()), metadata);
+            case OR -> matches(operand(expression.left()), metadata) || matches(operand(expression.right()), metadata);
+            case NOT -> !matches(operand(expression.left()), metadata);
+            case EQ -> equal(actual(expression, metadata), expected(expression));
+            case NE -> !equal(actual(expression, metadata), expected(expression));
+            case GT -> range(actual(expression, metadata), expected(expression), c -> c > 0);
+            case GTE -> range(actual(expression, metadata), expected(expression), c -> c >= 0);
+            case LT -> range(actual(expression, metadata), expected(expression), c -> c < 0);
+            case LTE -> range(actual(expression, metadata), expected(expression), c -> c <= 0);
+            case IN -> in(actual(expression, metadata), expected(expression));
+            case NIN -> !in(actual(expression, metadata), expected(expression));
+        };
+    }
+
+    private static Filter.Expression operand(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return group.content();
+        }
+        return (Filter.Expression) operand;
+    }
+
+    private static Object actual(Filter.Expression expression, Map<String, Object> metadata) {
+        String key = ((Filter.Key) expression.left()).key();
+        if (key.length() > 1 && (key.startsWith("\"") || key.startsWith("'"))) {
+            key = key.substring(1, key.length() - 1);
+        }
+        return metadata.get(key);
+    }
+
+    private static Object expected(Filter.Expression expression) {
+        return ((Filter.Value) expression.right()).value();
+    }
+
+    private static boolean equal(Object actual, Object expected) {
+        if (actual instanceof Number a && expected instanceof Number e) {
+            return a.doubleValue() == e.doubleValue();
+        }
+        return actual != null && expected != null && Objects.equals(actual.toString(), expected.toString());
+    }
+
+    /**
+     * A missing key never satisfies a range comparison, as with SQL {@code NULL}.
+     */
+    private static boolean range(Object actual, Object expected, IntPredicate test) {
+        if (actual == null || expected == null) {
+            return false;
+        }
+        if (actual instanceof Number a && expected instanceof Number e) {
+            return test.test(Double.compare(a.doubleValue(), e.doubleValue()));
+        }
+        return test.test(actual.toString().compareTo(expected.toString()));
+    }
+
+    private static boolean in(Object actual, Object expected) {
+        if (expected instanceof Collection<?> values) {
+            for (Object value : values) {
+                if (equal(actual, value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return equal(actual, expected);
+    }
+
+}
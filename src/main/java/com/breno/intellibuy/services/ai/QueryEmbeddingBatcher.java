@@ -0,0 +1,191 @@
+package com.breno.intellibuy.services.ai;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.context.ContextSnapshot;
+import io.micrometer.context.ContextSnapshotFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Gathers single-text embedding calls made at about the same time into one model call. The
+ * first text of a batch waits at most {@code lingerMillis} for others to join. Callers asking
+ * for a text that is already being embedded wait for that result instead of queueing it again.
+ * At most {@code maxConcurrentBatches} batches run at once; the dispatcher waits for a free slot,
+ * while later texts gather into the next batch. A batch runs in the context, e.g. the trace, of
+ * the call that opened it.
+ */
+final class QueryEmbeddingBatcher {
+
+    private static final ContextSnapshotFactory CONTEXT_SNAPSHOTS = ContextSnapshotFactory.builder().build();
+
+    private record Pending(String key, String text, CompletableFuture<float[]> result, ContextSnapshot context) {
+    }
+
+    private final Function<List<String>, List<float[]>> embedder;
+    private final ThreadFactory threadFactory;
+    private final BlockingQueue<Pending> queue;
+    private final Map<String, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final Semaphore batchSlots;
+    private final Duration maxWait;
+    private final DistributionSummary batchSizes;
+    private final Counter coalesced;
+    private volatile boolean running;
+    private Thread dispatcher;
+
+    QueryEmbeddingBatcher(Function<List<String>, List<float[]>> embedder, ThreadFactory threadFactory,
+                          MeterRegistry meterRegistry, int capacity, int maxBatchSize, long lingerMillis,
+                          int maxConcurrentBatches, Duration maxWait) {
+        this.embedder = embedder;
+        this.threadFactory = threadFactory;
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.batchSlots = new Semaphore(Math.max(1, maxConcurrentBatches));
+        this.maxWait = maxWait;
+        this.batchSizes = DistributionSummary.builder("intellibuy.embedding.query.batch.size")
+                .description("Query texts sent to the embedding model per call")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("intellibuy.embedding.query.coalesced")
+                .description("Query embeddings served by a call already in flight for the same text")
+                .register(meterRegistry);
+    }
+
+    void start() {
+        running = true;
+        dispatcher = threadFactory.newThread(this::dispatch);
+        dispatcher.setName("query-embedding-batcher");
+        dispatcher.start();
+    }
+
+    void stop() throws InterruptedException {
+        running = false;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+            dispatcher.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        List<Pending> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        if (!leftover.isEmpty()) {
+            run(leftover);
+        }
+    }
+
+    /**
+     * @param key cache key identifying the text, used to share in-flight calls
+     */
+    float[] embed(String key, String text) {
+        CompletableFuture<float[]> created = new CompletableFuture<>();
+        CompletableFuture<float[]> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+        Pending pending = new Pending(key, text, created, CONTEXT_SNAPSHOTS.captureAll());
+        if (!running || !queue.offer(pending)) {
+            run(List.of(pending));
+        } else if (!running && queue.remove(pending)) {
+            // stopped while offering, after the dispatcher's last drain
+            run(List.of(pending));
+        }
+        return await(created);
+    }
+
+    private void dispatch() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                List<Pending> ready = List.copyOf(batch);
+                batch.clear();
+                batchSlots.acquire();
+                try {
+                    threadFactory.newThread(() -> {
+                        try {
+                            run(ready);
+                        } finally {
+                            batchSlots.release();
+                        }
+                    }).start();
+                } catch (RuntimeException | Error e) {
+                    batchSlots.release();
+                    throw e;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        queue.drainTo(batch);
+        if (!batch.isEmpty()) {
+            run(batch);
+        }
+    }
+
+    private void run(List<Pending> batch) {
+        batchSizes.record(batch.size());
+        try (ContextSnapshot.Scope scope = batch.get(0).context().setThreadLocals()) {
+            List<float[]> vectors = embedder.apply(batch.stream().map(Pending::text).toList());
+            for (int i = 0; i < batch.size(); i++) {
+                Pending pending = batch.get(i);
+                inFlight.remove(pending.key(), pending.result());
+                pending.result().complete(vectors.get(i));
+            }
+        } catch (RuntimeException | Error e) {
+            for (Pending pending : batch) {
+                inFlight.remove(pending.key(), pending.result());
+                pending.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    private float[] await(CompletableFuture<float[]> result) {
+        try {
+            return result.get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Timed out waiting for the query embedding.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting for the query embedding.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+package com.breno.intellibuy.services.ai;
+
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder.Op;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Works out which document types a question is about, plus any price or date range it
+ * mentions, and turns that into a metadata filter for the similarity search. Questions
+ * without a recognisable intent search every entity type, never the system documents. Questions
+ * asking for a ranking ("most", "top", "best-selling") are flagged so precomputed counts can be added,
+ * and references such as "order #42" are resolved to the document IDs they name.
+ */
+@Component
+public class QueryIntentRouter {
+
+    static final List<String> ENTITY_TYPES = List.of("product", "customer", "purchase");
+
+    private static final Pattern PRODUCT_WORDS = Pattern.compile(
+            "\\b(products?|items?|catalog|price[sd]?|cost[s]?|cheap\\w*|expensive|sell|selling|stock)\\b");
+    private static final Pattern CUSTOMER_WORDS = Pattern.compile(
+            "\\b(customers?|clients?|cpf|phone|who)\\b");
+    private static final Pattern PURCHASE_WORDS = Pattern.compile(
+            "\\b(purchases?|purchased|orders?|ordered|bought|buys?|spent|spend|sales?|sold|history)\\b");
+    private static final Pattern RANKING_WORDS = Pattern.compile(
+            "\\b(most|top|best[- ]?sell\\w*|popular|favou?rites?)\\b");
+
+    private static final Pattern ENTITY_REFERENCE = Pattern.compile(
+            "\\b(purchase|order|customer|client|product)(?:\\s+id)?(?:\\s*#\\s*|\\s+)(\\d+)\\b");
+
+    private static final String AMOUNT = "\\$?\\s*(\\d+(?:[.,]\\d{1,2})?)";
+    private static final Pattern BETWEEN = Pattern.compile("\\bbetween\\s+" + AMOUNT + "\\s+and\\s+" + AMOUNT);
+    private static final Pattern AT_MOST = Pattern.compile("\\b(?:under|below|less than|cheaper than|at most|up to)\\s+" + AMOUNT);
+    private static final Pattern AT_LEAST = Pattern.compile("\\b(?:over|above|more than|at least|pricier than)\\s+" + AMOUNT);
+
+    private static final Pattern IN_YEAR = Pattern.compile("\\bin\\s+((?:19|20)\\d{2})\\b");
+    private static final Pattern AFTER_DATE = Pattern.compile("\\b(?:after|since)\\s+(\\d{4}-\\d{2}-\\d{2})\\b");
+    private static final Pattern BEFORE_DATE = Pattern.compile("\\bbefore\\s+(\\d{4}-\\d{2}-\\d{2})\\b");
+
+    private final int topK;
+    private final double similarityThreshold;
+
+    public QueryIntentRouter(
+            @Value("${intellibuy.ai.retrieval.top-k:5}") int topK,
+            @Value("${intellibuy.ai.retrieval.similarity-threshold:0.3}") double similarityThreshold) {
+        this.topK = topK;
+        this.similarityThreshold = similarityThreshold;
+    }
+
+    public RetrievalPlan route(String query) {
+        String text = query.toLowerCase(Locale.ROOT);
+
+        Set<String> types = new LinkedHashSet<>();
+        if (PRODUCT_WORDS.matcher(text).find()) {
+            types.add("product");
+        }
+        if (CUSTOMER_WORDS.matcher(text).find()) {
+            types.add("customer");
+        }
+        if (PURCHASE_WORDS.matcher(text).find()) {
+            types.add("purchase");
+        }
+        if (types.isEmpty()) {
+            types.addAll(ENTITY_TYPES);
+        }
+
+        BigDecimal minAmount = null;
+        BigDecimal maxAmount = null;
+        Matcher between = BETWEEN.matcher(text);
+        if (between.find()) {
+            minAmount = amount(between.group(1));
+            maxAmount = amount(between.group(2));
+        } else {
+            Matcher atMost = AT_MOST.matcher(text);
+            if (atMost.find()) {
+                maxAmount = amount(atMost.group(1));
+            }
+            Matcher atLeast = AT_LEAST.matcher(text);
+            if (atLeast.find()) {
+                minAmount = amount(atLeast.group(1));
+            }
+        }
+
+        String fromDate = null;
+        String toDate = null;
+        Matcher inYear = IN_YEAR.matcher(text);
+        if (inYear.find()) {
+            int year = Integer.parseInt(inYear.group(1));
+            fromDate = LocalDate.of(year, 1, 1).toString();
+            toDate = LocalDate.of(year + 1, 1, 1).toString();
+        }
+        Matcher after = AFTER_DATE.matcher(text);
+        if (after.find()) {
+            fromDate = after.group(1);
+        }
+        Matcher before = BEFORE_DATE.matcher(text);
+        if (before.find()) {
+            toDate = before.group(1);
+        }
+
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        Op filter = null;
+        for (String type : types) {
+            Op clause = b.eq("type", type);
+            if (type.equals("product")) {
+                clause = withRange(b, clause, "product_price", minAmount, maxAmount);
+            } else if (type.equals("purchase")) {
+                clause = withRange(b, clause, "total_value", minAmount, maxAmount);
+                if (fromDate != null) {
+                    clause = b.and(clause, b.gte("purchase_date", fromDate));
+                }
+                if (toDate != null) {
+                    clause = b.and(clause, b.lt("purchase_date", toDate));
+                }
+            }
+            filter = filter == null ? b.group(clause) : b.or(filter, b.group(clause));
+        }
+
+        boolean ranking = RANKING_WORDS.matcher(text).find();
+
+        List<String> documentIds = new ArrayList<>();
+        Matcher reference = ENTITY_REFERENCE.matcher(text);
+        while (reference.find()) {
+            String type = switch (reference.group(1)) {
+                case "order" -> "purchase";
+                case "client" -> "customer";
+                default -> reference.group(1);
+            };
+            documentIds.add(EmbeddingDocumentFactory.documentId(type, reference.group(2).replaceFirst("^0+(?=\\d)", "")));
+        }
+
+        return new RetrievalPlan(query, types, filter.build(), topK, similarityThreshold, ranking, documentIds);
+    }
+
+    private static Op withRange(FilterExpressionBuilder b, Op clause, String key, BigDecimal min, BigDecimal max) {
+        if (min != null) {
+            clause = b.and(clause, b.gte(key, min.doubleValue()));
+        }
+        if (max != null) {
+            clause = b.and(clause, b.lte(key, max.doubleValue()));
+        }
+        return clause;
+    }
+
+    private static BigDecimal amount(String value) {
+        return new BigDecimal(value.replace(',', '.'));
+    }
+
+    public record RetrievalPlan(
+            String query,
+            Set<String> types,
+            Filter.Expression filter,
+            int topK,
+            double similarityThreshold,
+            boolean ranking,
+            List<String> documentIds) {
+
+        public SearchRequest toSearchRequest() {
+            return toSearchRequest(topK);
+        }
+
+        public SearchRequest toSearchRequest(int topK) {
+            return SearchRequest.builder()
+                    .query(query)
+                    .filterExpression(filter)
+                    .topK(topK)
+                    .similarityThreshold(similarityThreshold)
+                    .build();
+        }
+    }
+
+}
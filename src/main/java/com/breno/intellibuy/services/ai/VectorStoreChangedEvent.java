@@ -0,0 +1,20 @@
+package com.breno.intellibuy.services.ai;
+
+import java.util.Set;
+
+/**
+ * Published after documents have been added to or removed from the vector store, carrying the
+ * vector store version the write advanced to, or {@code -1} if that is unknown. When known, the
+ * IDs of the written and removed documents and the types of the written ones are included;
+ * {@code null} means any document may have changed.
+ */
+public record VectorStoreChangedEvent(int documentCount, long version, Set<String> documentIds, Set<String> types) {
+
+    public VectorStoreChangedEvent(int documentCount, long version) {
+        this(documentCount, version, null, null);
+    }
+
+    public boolean isKnown() {
+        return documentIds != null && types != null;
+    }
+}
@@ -0,0 +1,119 @@
+package com.breno.intellibuy.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BulkheadTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void failuresCutTheLimitDownToTheMinimum() {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 4, Duration.ofSeconds(10), Duration.ofMillis(50), registry);
+
+        List<Integer> limits = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            bulkhead.acquire().fail();
+            limits.add(limit());
+        }
+
+        assertThat(limits).containsExactly(3, 2, 1, 1);
+    }
+
+    @Test
+    void slowCallsCutTheLimit() {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 4, Duration.ofMillis(1), Duration.ofMillis(50), registry);
+
+        bulkhead.call(() -> sleep(20));
+
+        assertThat(limit()).isEqualTo(3);
+    }
+
+    @Test
+    void limitGrowsBackOnlyWhileFullyUsed() {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 4, Duration.ofSeconds(10), Duration.ofMillis(50), registry);
+        bulkhead.acquire().fail();
+        bulkhead.acquire().fail();
+        assertThat(limit()).isEqualTo(2);
+
+        for (int i = 0; i < 10; i++) {
+            bulkhead.call(() -> "one at a time");
+        }
+        assertThat(limit()).isEqualTo(2);
+
+        for (int round = 0; round < 20; round++) {
+            List<AdaptiveLimit.Permit> permits = new ArrayList<>();
+            for (int i = limit(); i > 0; i--) {
+                permits.add(bulkhead.acquire());
+            }
+            permits.forEach(AdaptiveLimit.Permit::close);
+        }
+        assertThat(limit()).isEqualTo(4);
+    }
+
+    @Test
+    void waitersAreAdmittedInArrivalOrder() throws InterruptedException {
+        Bulkhead bulkhead = new Bulkhead("test", 1, Duration.ofSeconds(5), registry);
+        AdaptiveLimit.Permit held = bulkhead.acquire();
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+
+        List<Thread> waiters = new ArrayList<>();
+        for (String name : List.of("a", "b", "c")) {
+            waiters.add(Thread.ofVirtual().start(() -> bulkhead.call(() -> admitted.add(name))));
+            awaitWaiting(waiters.size());
+        }
+        held.close();
+        for (Thread waiter : waiters) {
+            waiter.join(5_000);
+        }
+
+        assertThat(admitted).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    void rejectsWith503AfterMaxWait() {
+        Bulkhead bulkhead = new Bulkhead("test", 1, Duration.ofMillis(20), registry);
+        AdaptiveLimit.Permit held = bulkhead.acquire();
+
+        assertThatThrownBy(bulkhead::acquire)
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+        held.close();
+        assertThat(registry.get("intellibuy.bulkhead.rejected").counter().count()).isEqualTo(1);
+    }
+
+    private int limit() {
+        return (int) registry.get("intellibuy.bulkhead.limit").gauge().value();
+    }
+
+    private void awaitWaiting(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (registry.get("intellibuy.bulkhead.waiting").gauge().value() < expected) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Expected " + expected + " waiting callers");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static String sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "slept";
+    }
+
+}
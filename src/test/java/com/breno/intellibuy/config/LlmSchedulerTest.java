@@ -0,0 +1,156 @@
+package com.breno.intellibuy.config;
+
+import com.breno.intellibuy.config.LlmScheduler.Priority;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LlmSchedulerTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    void interactiveRequestsGoAheadOfQueuedBackgroundOnes() throws Exception {
+        LlmScheduler scheduler = scheduler(10, Duration.ofSeconds(30));
+        AdaptiveLimit.Permit held = scheduler.acquire(Priority.INTERACTIVE);
+
+        Future<?> background = enqueue(scheduler, Priority.BACKGROUND, "background", 1);
+        Future<?> interactive = enqueue(scheduler, Priority.INTERACTIVE, "interactive", 2);
+        held.close();
+        background.get(5, TimeUnit.SECONDS);
+        interactive.get(5, TimeUnit.SECONDS);
+
+        assertThat(admitted).containsExactly("interactive", "background");
+    }
+
+    @Test
+    void fullQueueDisplacesALowerPriorityWaiterWith429() throws Exception {
+        LlmScheduler scheduler = scheduler(1, Duration.ofSeconds(30));
+        AdaptiveLimit.Permit held = scheduler.acquire(Priority.INTERACTIVE);
+
+        Future<?> background = enqueue(scheduler, Priority.BACKGROUND, "background", 1);
+        Future<?> interactive = callers.submit(() -> scheduler.call(Priority.INTERACTIVE, () -> admitted.add("interactive")));
+
+        assertThat(statusOf(background)).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        held.close();
+        interactive.get(5, TimeUnit.SECONDS);
+        assertThat(admitted).containsExactly("interactive");
+        assertThat(rejections("background", "queue_full")).isEqualTo(1);
+    }
+
+    @Test
+    void fullQueueRejectsEqualOrLowerPriorityWith429() throws Exception {
+        LlmScheduler scheduler = scheduler(1, Duration.ofSeconds(30));
+        AdaptiveLimit.Permit held = scheduler.acquire(Priority.INTERACTIVE);
+        Future<?> queued = enqueue(scheduler, Priority.INTERACTIVE, "queued", 1);
+
+        assertStatus(() -> scheduler.acquire(Priority.INTERACTIVE), HttpStatus.TOO_MANY_REQUESTS);
+        assertStatus(() -> scheduler.acquire(Priority.BACKGROUND), HttpStatus.TOO_MANY_REQUESTS);
+        assertStatus(() -> scheduler.checkAdmission(Priority.INTERACTIVE), HttpStatus.TOO_MANY_REQUESTS);
+
+        held.close();
+        queued.get(5, TimeUnit.SECONDS);
+        scheduler.checkAdmission(Priority.INTERACTIVE);
+        assertThat(admitted).containsExactly("queued");
+    }
+
+    @Test
+    void requestsThatCannotFinishBeforeTheirDeadlineAreShedWith503() {
+        LlmScheduler scheduler = scheduler(10, Duration.ofMillis(400));
+        // teaches the scheduler that a call takes about 300 ms
+        scheduler.call(Priority.INTERACTIVE, () -> sleep(300));
+        AdaptiveLimit.Permit held = scheduler.acquire(Priority.INTERACTIVE);
+
+        long started = System.nanoTime();
+        assertStatus(() -> scheduler.acquire(Priority.INTERACTIVE), HttpStatus.SERVICE_UNAVAILABLE);
+        held.close();
+
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofMillis(400));
+        assertThat(rejections("interactive", "deadline")).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsAnEmptyQueue() {
+        assertThatThrownBy(() -> scheduler(0, Duration.ofSeconds(30)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private LlmScheduler scheduler(int maxQueued, Duration interactiveDeadline) {
+        return new LlmScheduler("test", 1, 1, Duration.ofMinutes(1), maxQueued,
+                Map.of(Priority.INTERACTIVE, interactiveDeadline, Priority.BACKGROUND, Duration.ofMinutes(1)),
+                registry);
+    }
+
+    private Future<?> enqueue(LlmScheduler scheduler, Priority priority, String name, int expectedDepth)
+            throws InterruptedException {
+        Future<?> future = callers.submit(() -> scheduler.call(priority, () -> admitted.add(name)));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (registry.get("intellibuy.llm.queue.depth").gauge().value() < expectedDepth) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError(name + " was not queued");
+            }
+            Thread.sleep(1);
+        }
+        return future;
+    }
+
+    private double rejections(String priority, String reason) {
+        return registry.get("intellibuy.llm.rejected").tag("priority", priority).tag("reason", reason)
+                .counter().count();
+    }
+
+    private static HttpStatusCode statusOf(Future<?> future) throws InterruptedException {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ResponseStatusException rejected) {
+                return rejected.getStatusCode();
+            }
+            throw new AssertionError(e.getCause());
+        } catch (TimeoutException e) {
+            throw new AssertionError("Still waiting", e);
+        }
+        throw new AssertionError("Expected a rejection");
+    }
+
+    private static void assertStatus(Runnable call, HttpStatus status) {
+        assertThatThrownBy(call::run)
+                .isInstanceOfSatisfying(ResponseStatusException.class, e -> assertThat(e.getStatusCode()).isEqualTo(status));
+    }
+
+    private static String sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "slept";
+    }
+
+}
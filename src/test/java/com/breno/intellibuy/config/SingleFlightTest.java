@@ -0,0 +1,160 @@
+package com.breno.intellibuy.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    // platform threads, whose state reliably shows when a waiter is blocked on the leader
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+    private final List<Thread> waiting = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    void waitersShareTheLeaderResult() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test", Duration.ofSeconds(5), registry);
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        Future<String> leader = callers.submit(() -> singleFlight.execute("key", () -> {
+            calls.incrementAndGet();
+            leaderStarted.countDown();
+            await(release);
+            return "answer";
+        }));
+        leaderStarted.await();
+        List<Future<String>> waiters = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            waiters.add(callers.submit(() -> {
+                waiting.add(Thread.currentThread());
+                return singleFlight.execute("key", () -> {
+                    calls.incrementAndGet();
+                    return "duplicate";
+                });
+            }));
+        }
+        awaitBlocked(3);
+        release.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("answer");
+        for (Future<String> waiter : waiters) {
+            assertThat(waiter.get(5, TimeUnit.SECONDS)).isEqualTo("answer");
+        }
+        assertThat(calls).hasValue(1);
+        assertThat(count("executed")).isEqualTo(1);
+        assertThat(count("shared")).isEqualTo(3);
+    }
+
+    @Test
+    void leaderFailureIsRethrownToWaiters() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test", Duration.ofSeconds(5), registry);
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = callers.submit(() -> singleFlight.execute("key", () -> {
+            leaderStarted.countDown();
+            await(release);
+            throw new IllegalStateException("model unavailable");
+        }));
+        leaderStarted.await();
+        Future<String> waiter = callers.submit(() -> {
+            waiting.add(Thread.currentThread());
+            return singleFlight.execute("key", () -> "second call");
+        });
+        awaitBlocked(1);
+        release.countDown();
+
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> waiter.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasRootCauseMessage("model unavailable");
+    }
+
+    @Test
+    void waiterGivesUpWith503WhileTheLeaderKeepsRunning() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test", Duration.ofMillis(50), registry);
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = callers.submit(() -> singleFlight.execute("key", () -> {
+            leaderStarted.countDown();
+            await(release);
+            return "answer";
+        }));
+        leaderStarted.await();
+
+        assertThatThrownBy(() -> singleFlight.execute("key", () -> "second call"))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+        release.countDown();
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("answer");
+        assertThat(count("timeout")).isEqualTo(1);
+    }
+
+    @Test
+    void laterCallsRunAgainOnceTheLeaderFinished() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test", Duration.ofSeconds(5), registry);
+        AtomicInteger calls = new AtomicInteger();
+
+        singleFlight.execute("key", () -> "first " + calls.incrementAndGet());
+        assertThatThrownBy(() -> singleFlight.execute("key", () -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("failed");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(singleFlight.execute("key", () -> "third " + calls.incrementAndGet())).isEqualTo("third 3");
+        assertThat(singleFlight.execute("other", () -> "other")).isEqualTo("other");
+    }
+
+    private double count(String outcome) {
+        return registry.get("intellibuy.singleflight.calls").tag("outcome", outcome).counter().count();
+    }
+
+    private void awaitBlocked(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (waiting.size() < expected
+                || !waiting.stream().allMatch(thread -> thread.getState() == Thread.State.TIMED_WAITING)) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Expected " + expected + " waiting callers");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.breno.intellibuy.services;
+
+import com.breno.intellibuy.model.Customer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.matches;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class EntityCacheTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final Map<Long, Customer> database = new HashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void loadsOnceAndServesCopies() {
+        database.put(1L, customer(1L, "Ana"));
+        EntityCache<Customer> cache = cache(disabledBus());
+
+        Customer first = cache.get(1L).orElseThrow();
+        first.setName("changed by the caller");
+
+        assertThat(cache.get(1L)).map(Customer::getName).contains("Ana");
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void evictReloadsTheEntity() {
+        database.put(1L, customer(1L, "Ana"));
+        EntityCache<Customer> cache = cache(disabledBus());
+        cache.get(1L);
+
+        database.put(1L, customer(1L, "Ana Maria"));
+        assertThat(cache.get(1L)).map(Customer::getName).contains("Ana");
+        cache.evict(1L);
+
+        assertThat(cache.get(1L)).map(Customer::getName).contains("Ana Maria");
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void putReplacesTheCachedEntityWithoutLoading() {
+        EntityCache<Customer> cache = cache(disabledBus());
+        Customer written = customer(2L, "Bruno");
+
+        cache.put(written);
+        written.setName("changed after put");
+
+        assertThat(cache.get(2L)).map(Customer::getName).contains("Bruno");
+        assertThat(loads).hasValue(0);
+    }
+
+    @Test
+    void remoteInvalidationDropsOnlyThatEntity() {
+        database.put(1L, customer(1L, "Ana"));
+        database.put(2L, customer(2L, "Bruno"));
+        EntityCache<Customer> cache = cache(disabledBus());
+        cache.getAll(List.of(1L, 2L));
+
+        database.put(1L, customer(1L, "Ana Maria"));
+        database.put(2L, customer(2L, "Bruno Costa"));
+        cache.evictLocally(1L);
+
+        assertThat(cache.get(1L)).map(Customer::getName).contains("Ana Maria");
+        assertThat(cache.get(2L)).map(Customer::getName).contains("Bruno");
+    }
+
+    @Test
+    void reconnectClearsEverything() {
+        database.put(1L, customer(1L, "Ana"));
+        database.put(2L, customer(2L, "Bruno"));
+        EntityCache<Customer> cache = cache(disabledBus());
+        cache.getAll(List.of(1L, 2L));
+
+        cache.invalidateLocally();
+        cache.getAll(List.of(1L, 2L));
+
+        assertThat(loads).hasValue(4);
+    }
+
+    @Test
+    void writesAreAnnouncedToOtherInstances() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        CacheInvalidationBus bus = new CacheInvalidationBus(jdbcTemplate, Thread.ofVirtual().factory(), registry,
+                true, "intellibuy_cache", "", "", "");
+        EntityCache<Customer> cache = cache(bus);
+
+        cache.put(customer(3L, "Carla"));
+        cache.evict(3L);
+
+        verify(jdbcTemplate, times(2)).queryForObject(eq("select pg_notify(?, ?)"), eq(Object.class),
+                eq("intellibuy_cache"), matches(".+:customers:3"));
+        assertThat(registry.get("intellibuy.cache.invalidations").tag("direction", "published").counter().count())
+                .isEqualTo(2);
+    }
+
+    private CacheInvalidationBus disabledBus() {
+        return new CacheInvalidationBus(null, Thread.ofVirtual().factory(), registry, false, "intellibuy_cache", "", "", "");
+    }
+
+    private EntityCache<Customer> cache(CacheInvalidationBus bus) {
+        return new EntityCache<>("customers", 100, Duration.ofMinutes(10),
+                id -> {
+                    loads.incrementAndGet();
+                    return Optional.ofNullable(database.get(id));
+                },
+                ids -> {
+                    loads.addAndGet(ids.size());
+                    return ids.stream().map(database::get).toList();
+                },
+                Customer::getId,
+                c -> customer(c.getId(), c.getName()),
+                bus, registry);
+    }
+
+    private static Customer customer(Long id, String name) {
+        return new Customer(id, name, "000.000.000-00", "555-0100", null);
+    }
+
+}
@@ -0,0 +1,172 @@
+package com.breno.intellibuy.services.ai;
+
+import com.breno.intellibuy.services.PurchaseStatsChangedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AnswerCacheTest {
+
+    private static final AnswerCache.Dependencies NOTHING = dependencies(Set.of(), Set.of(), Set.of());
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+    private final Map<String, float[]> embeddings = new HashMap<>();
+    private final AnswerCache cache;
+
+    AnswerCacheTest() {
+        // every question embeds to the same vector unless a test says otherwise, as if all were paraphrases
+        when(embeddingModel.embed(anyString()))
+                .thenAnswer(call -> embeddings.getOrDefault(call.<String>getArgument(0), new float[]{1, 0, 0}));
+        cache = new AnswerCache(embeddingModel, new QueryIntentRouter(5, 0.3), registry,
+                true, 100, Duration.ofHours(1), true, 0.05, 100);
+    }
+
+    @Test
+    void exactTierIgnoresCaseSpacingAndTrailingPunctuation() {
+        store("What did customer 42 buy?", "answer", NOTHING);
+
+        assertThat(cache.lookupExact("  what did   CUSTOMER 42 buy ")).isEqualTo("answer");
+    }
+
+    @Test
+    void semanticTierServesAParaphraseWithTheSamePlan() {
+        store("show the purchases of customer 42", "answer", NOTHING);
+
+        assertThat(cache.lookup("list the purchases of customer 42").answer()).isEqualTo("answer");
+        assertThat(hits("semantic")).isEqualTo(1);
+    }
+
+    @Test
+    void semanticHitsAreNotCopiedIntoTheExactTier() {
+        store("show the purchases of customer 42", "answer", NOTHING);
+
+        cache.lookup("list the purchases of customer 42");
+
+        assertThat(cache.lookupExact("list the purchases of customer 42")).isNull();
+    }
+
+    @Test
+    void questionsAboutAnotherEntityDoNotShareAnAnswer() {
+        store("purchases of customer 42", "about 42", NOTHING);
+
+        assertThat(cache.lookup("purchases of customer 43").isHit()).isFalse();
+    }
+
+    @Test
+    void questionsWithAnotherAmountDoNotShareAnAnswer() {
+        store("products under $50", "cheap", NOTHING);
+
+        assertThat(cache.lookup("products under $500").isHit()).isFalse();
+        assertThat(cache.lookup("items under $50").isHit()).isTrue();
+    }
+
+    @Test
+    void questionsRoutedToOtherTypesDoNotShareAnAnswer() {
+        store("who bought the most", "customers", NOTHING);
+
+        assertThat(cache.lookup("what sold the most").isHit()).isFalse();
+    }
+
+    @Test
+    void distantEmbeddingsMiss() {
+        embeddings.put("list the purchases of customer 42", new float[]{0, 1, 0});
+        store("show the purchases of customer 42", "answer", NOTHING);
+
+        assertThat(cache.lookup("list the purchases of customer 42").isHit()).isFalse();
+    }
+
+    @Test
+    void vectorStoreChangeEvictsOnlyAnswersBuiltFromTheChangedDocuments() {
+        store("purchases of customer 1", "one", dependencies(Set.of("customer:1"), Set.of(), Set.of()));
+        store("purchases of customer 2", "two", dependencies(Set.of("customer:2"), Set.of(), Set.of()));
+
+        cache.onVectorStoreChanged(new VectorStoreChangedEvent(1, 7, Set.of("customer:1"), Set.of("customer")));
+
+        assertThat(cache.lookupExact("purchases of customer 1")).isNull();
+        assertThat(cache.lookupExact("purchases of customer 2")).isEqualTo("two");
+    }
+
+    @Test
+    void vectorStoreChangeEvictsWholeCollectionAnswersOfTheSameType() {
+        store("most popular products", "ranking", dependencies(Set.of(), Set.of(), Set.of("product")));
+        store("who are the customers", "customers", dependencies(Set.of(), Set.of(), Set.of("customer")));
+
+        cache.onVectorStoreChanged(new VectorStoreChangedEvent(1, 7, Set.of("product:9"), Set.of("product")));
+
+        assertThat(cache.lookupExact("most popular products")).isNull();
+        assertThat(cache.lookupExact("who are the customers")).isEqualTo("customers");
+    }
+
+    @Test
+    void unknownVectorStoreChangeEvictsEverything() {
+        store("purchases of customer 1", "one", dependencies(Set.of("customer:1"), Set.of(), Set.of()));
+        store("products under $50", "cheap", NOTHING);
+
+        cache.onVectorStoreChanged(new VectorStoreChangedEvent(2, -1));
+
+        assertThat(cache.lookupExact("purchases of customer 1")).isNull();
+        assertThat(cache.lookupExact("products under $50")).isNull();
+        assertThat(cache.lookup("items under $50").isHit()).isFalse();
+    }
+
+    @Test
+    void purchaseStatisticsChangeEvictsAnswersQuotingThoseTotals() {
+        embeddings.put("how much did bruno spend", new float[]{0, 1, 0});
+        embeddings.put("best selling products", new float[]{0, 0, 1});
+        store("how much did ana spend", "ana", new AnswerCache.Dependencies(Set.of(), Set.of(1L), Set.of(), Set.of(), false));
+        store("how much did bruno spend", "bruno", new AnswerCache.Dependencies(Set.of(), Set.of(2L), Set.of(), Set.of(), false));
+        store("best selling products", "top", new AnswerCache.Dependencies(Set.of(), Set.of(), Set.of(), Set.of(), true));
+
+        cache.onPurchaseStatsChanged(new PurchaseStatsChangedEvent(Set.of(1L), Set.of(5L)));
+
+        assertThat(cache.lookupExact("how much did ana spend")).isNull();
+        assertThat(cache.lookupExact("how much did bruno spend")).isEqualTo("bruno");
+        assertThat(cache.lookupExact("best selling products")).isNull();
+    }
+
+    @Test
+    void answerGeneratedAcrossARelevantChangeIsNotCached() {
+        AnswerCache.Lookup lookup = cache.lookup("purchases of customer 1");
+        cache.onVectorStoreChanged(new VectorStoreChangedEvent(1, 7, Set.of("customer:1"), Set.of("customer")));
+        cache.put(lookup, "stale", 10, dependencies(Set.of("customer:1"), Set.of(), Set.of()));
+
+        assertThat(cache.lookupExact("purchases of customer 1")).isNull();
+        assertThat(cache.lookup("purchases of customer 1").isHit()).isFalse();
+    }
+
+    @Test
+    void answerGeneratedAcrossAnUnrelatedChangeIsCached() {
+        AnswerCache.Lookup lookup = cache.lookup("purchases of customer 1");
+        cache.onVectorStoreChanged(new VectorStoreChangedEvent(1, 7, Set.of("customer:2"), Set.of("customer")));
+        cache.put(lookup, "fresh", 10, dependencies(Set.of("customer:1"), Set.of(), Set.of()));
+
+        assertThat(cache.lookupExact("purchases of customer 1")).isEqualTo("fresh");
+    }
+
+    private void store(String question, String answer, AnswerCache.Dependencies dependencies) {
+        AnswerCache.Lookup lookup = cache.lookup(question);
+        assertThat(lookup.isHit()).isFalse();
+        cache.put(lookup, answer, 100, dependencies);
+    }
+
+    private double hits(String tier) {
+        return registry.get("intellibuy.ai.answer.cache").tag("tier", tier).counter().count();
+    }
+
+    private static AnswerCache.Dependencies dependencies(Set<String> documentIds, Set<Long> customerIds, Set<String> types) {
+        return new AnswerCache.Dependencies(documentIds, customerIds, Set.of(), types, false);
+    }
+
+}
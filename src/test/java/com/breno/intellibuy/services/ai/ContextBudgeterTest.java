@@ -0,0 +1,96 @@
+package com.breno.intellibuy.services.ai;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContextBudgeterTest {
+
+    private final ContextBudgeter budgeter = new ContextBudgeter(1500, 3, 0.9);
+
+    @Test
+    void keepsPurchasesThatDifferOnlyInIdAndAmount() {
+        Document first = purchase(42L, 7L, "Purchase 42 by customer Ana on 2024-01-05. Items: [1 unit(s) of Mouse]. Total value: 50.00");
+        Document second = purchase(43L, 7L, "Purchase 43 by customer Ana on 2024-01-05. Items: [1 unit(s) of Mouse]. Total value: 500.00");
+
+        ContextBudgeter.Context context = budgeter.build("", List.of(first, second));
+
+        assertThat(context.sections()).isEqualTo(2);
+        assertThat(context.duplicates()).isZero();
+        assertThat(context.text()).contains("Purchase 42", "Purchase 43");
+    }
+
+    @Test
+    void keepsSimilarDocumentsAboutDifferentEntitiesEvenWithIdenticalWordSets() {
+        // same words in a different order, so the Jaccard similarity is 1.0
+        Document first = new Document("Ana bought Mouse and Keyboard", Map.of("customer_id", 1L));
+        Document second = new Document("Keyboard and Mouse Ana bought", Map.of("customer_id", 2L));
+
+        ContextBudgeter.Context context = budgeter.build("", List.of(first, second));
+
+        assertThat(context.sections()).isEqualTo(2);
+        assertThat(context.duplicates()).isZero();
+    }
+
+    @Test
+    void dropsNearDuplicatesOfTheSameEntity() {
+        Document current = purchase(42L, 7L, "Purchase 42 by customer Ana. Items: [1 unit(s) of Mouse]. Total value: 50.00");
+        Document stale = purchase(42L, 7L, "Purchase 42 by customer Ana. Items: [1 unit(s) of Mouse]. Total value: 50.00 ");
+
+        ContextBudgeter.Context context = budgeter.build("", List.of(current, stale));
+
+        assertThat(context.sections()).isEqualTo(1);
+        assertThat(context.duplicates()).isEqualTo(1);
+    }
+
+    @Test
+    void matchesEntityIdsWhateverTheirNumericType() {
+        Document current = new Document("Product Mouse costs 50.00", Map.of("product_id", 5L));
+        Document reloaded = new Document("Product Mouse costs 50.00.", Map.of("product_id", 5));
+
+        ContextBudgeter.Context context = budgeter.build("", List.of(current, reloaded));
+
+        assertThat(context.duplicates()).isEqualTo(1);
+    }
+
+    @Test
+    void dropsExactTextDuplicatesWithoutMetadata() {
+        Document first = new Document("Shared note");
+        Document second = new Document("Shared note");
+        Document similar = new Document("Shared note!");
+
+        ContextBudgeter.Context context = budgeter.build("", List.of(first, second, similar));
+
+        assertThat(context.sections()).isEqualTo(2);
+        assertThat(context.duplicates()).isEqualTo(1);
+    }
+
+    @Test
+    void compactsLongItemListsAndStopsAtTheBudget() {
+        String items = IntStream.rangeClosed(1, 5)
+                .mapToObj(i -> i + " unit(s) of Item" + i)
+                .collect(Collectors.joining(", "));
+        String text = "Purchase 1. Items: [" + items + "]. Total value: 10.00";
+        assertThat(budgeter.compact(text))
+                .isEqualTo("Purchase 1. Items: [1 unit(s) of Item1, 2 unit(s) of Item2, 3 unit(s) of Item3, and 2 more item(s)]. Total value: 10.00");
+
+        ContextBudgeter small = new ContextBudgeter(budgeter.estimateTokens("alpha beta gamma") + 1, 3, 0.9);
+        ContextBudgeter.Context context = small.build("", List.of(
+                new Document("alpha beta gamma", Map.of("product_id", 1L)),
+                new Document("delta epsilon zeta", Map.of("product_id", 2L))));
+
+        assertThat(context.text()).isEqualTo("alpha beta gamma");
+        assertThat(context.overBudget()).isEqualTo(1);
+    }
+
+    private static Document purchase(long purchaseId, long customerId, String text) {
+        return new Document(text, Map.of("type", "purchase", "purchase_id", purchaseId, "customer_id", customerId));
+    }
+
+}
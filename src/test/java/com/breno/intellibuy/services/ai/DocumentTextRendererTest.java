@@ -0,0 +1,121 @@
+package com.breno.intellibuy.services.ai;
+
+import com.breno.intellibuy.model.Customer;
+import com.breno.intellibuy.model.Product;
+import com.breno.intellibuy.model.Purchase;
+import com.breno.intellibuy.model.PurchaseItem;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DocumentTextRendererTest {
+
+    private static final List<String> PRICES = List.of(
+            "0", "0.00", "0.004", "0.005", "0.015", "1.005", "2.345", "2.355", "9.995", "19.99", "100",
+            "1234567.891", "-0.001", "-0.005", "-1.005", "-19.99",
+            "99999999999999999.99", "999999999999999999.995", "123456789012345678901234567890.125");
+
+    @Test
+    void productMatchesTheFormatTemplate() {
+        for (String price : PRICES) {
+            assertMatches(new Product(1L, "Mouse", new BigDecimal(price), "Wireless", null));
+        }
+        assertMatches(new Product(1L, null, null, null, null));
+    }
+
+    @Test
+    void customerMatchesTheFormatTemplate() {
+        assertMatches(new Customer(1L, "Ana Souza", "123.456.789-00", "(11) 91234-5678", null));
+        assertMatches(new Customer(1L, null, null, null, null));
+    }
+
+    @Test
+    void purchaseMatchesTheFormatTemplate() {
+        Customer customer = new Customer(1L, "Ana", null, null, null);
+        for (String price : PRICES) {
+            assertMatches(purchase(customer, LocalDateTime.of(2024, 3, 7, 10, 30), new BigDecimal(price),
+                    item("Mouse", 2), item("Keyboard", 1)));
+        }
+        assertMatches(purchase(new Customer(1L, null, null, null, null), LocalDateTime.of(2024, 12, 31, 23, 59), null,
+                item(null, null)));
+        assertMatches(purchase(customer, LocalDateTime.of(2024, 1, 1, 0, 0), BigDecimal.ONE));
+    }
+
+    @Test
+    void purchaseDatesOutsideFourDigitYearsMatchLocalDateToString() {
+        Customer customer = new Customer(1L, "Ana", null, null, null);
+        for (int year : new int[]{-1, 0, 1, 999, 1000, 9999, 10000, 123456}) {
+            assertMatches(purchase(customer, LocalDateTime.of(year, 2, 3, 4, 5), BigDecimal.TEN, item("Mouse", 1)));
+        }
+    }
+
+    @Test
+    void randomEntitiesMatchTheFormatTemplates() {
+        Random random = new Random(42);
+        for (int i = 0; i < 5_000; i++) {
+            BigDecimal price = BigDecimal.valueOf(random.nextLong(-1_000_000_000L, 1_000_000_000_000L), random.nextInt(5));
+            assertMatches(new Product((long) i, "Product " + i, price, "Description " + random.nextInt(), null));
+
+            List<PurchaseItem> items = new ArrayList<>();
+            for (int j = random.nextInt(6); j > 0; j--) {
+                items.add(item("Product " + random.nextInt(100), random.nextInt(1, 50)));
+            }
+            LocalDateTime date = LocalDateTime.of(random.nextInt(1, 12_000), random.nextInt(1, 13), random.nextInt(1, 29), 0, 0);
+            assertMatches(purchase(new Customer((long) i, "Customer " + i, null, null, null), date, price,
+                    items.toArray(PurchaseItem[]::new)));
+        }
+    }
+
+    @Test
+    void pricesIgnoreTheDefaultLocale() {
+        Locale previous = Locale.getDefault();
+        Locale.setDefault(Locale.GERMANY);
+        try {
+            assertThat(DocumentTextRenderer.product(new Product(1L, "Mouse", new BigDecimal("1234.5"), "Wireless", null)))
+                    .isEqualTo("Product: Mouse. Description: Wireless. Price: $1234.50.");
+        } finally {
+            Locale.setDefault(previous);
+        }
+    }
+
+    private static void assertMatches(Product product) {
+        String expected = String.format(Locale.ROOT, "Product: %s. Description: %s. Price: $%.2f.",
+                product.getName(), product.getDescription(), product.getPrice());
+        assertThat(DocumentTextRenderer.product(product)).isEqualTo(expected);
+    }
+
+    private static void assertMatches(Customer customer) {
+        String expected = String.format(Locale.ROOT, "Customer: %s. CPF: %s. Phone: %s.",
+                customer.getName(), customer.getCpf(), customer.getPhone());
+        assertThat(DocumentTextRenderer.customer(customer)).isEqualTo(expected);
+    }
+
+    private static void assertMatches(Purchase purchase) {
+        String items = purchase.getPurchaseItem().stream()
+                .map(item -> String.format(Locale.ROOT, "%d unit(s) of %s", item.getQuantity(), item.getProduct().getName()))
+                .collect(Collectors.joining(", "));
+        String expected = String.format(Locale.ROOT, "Purchase made by customer %s on %s. Items: [%s]. Total value: $%.2f.",
+                purchase.getCustomer().getName(),
+                purchase.getDatePurchase().toLocalDate().toString(),
+                items,
+                purchase.getTotalValue());
+        assertThat(DocumentTextRenderer.purchase(purchase)).isEqualTo(expected);
+    }
+
+    private static Purchase purchase(Customer customer, LocalDateTime date, BigDecimal totalValue, PurchaseItem... items) {
+        return new Purchase(1L, customer, List.of(items), date, totalValue, null);
+    }
+
+    private static PurchaseItem item(String productName, Integer quantity) {
+        return new PurchaseItem(null, null, new Product(null, productName, BigDecimal.ONE, null, null), quantity);
+    }
+
+}
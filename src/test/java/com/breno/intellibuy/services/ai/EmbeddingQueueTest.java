@@ -0,0 +1,226 @@
+package com.breno.intellibuy.services.ai;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class EmbeddingQueueTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final VectorStore vectorStore = mock(VectorStore.class);
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+    private final List<VectorStoreChangedEvent> events = Collections.synchronizedList(new ArrayList<>());
+    private EmbeddingQueue queue;
+
+    EmbeddingQueueTest() {
+        doAnswer(call -> {
+            for (Document document : call.<List<Document>>getArgument(0)) {
+                written.add(document.getId() + "=" + document.getText());
+            }
+            return null;
+        }).when(vectorStore).add(anyList());
+        doAnswer(call -> {
+            for (String id : call.<List<String>>getArgument(0)) {
+                written.add(id + " deleted");
+            }
+            return null;
+        }).when(vectorStore).delete(anyList());
+        doAnswer(call -> events.add(call.getArgument(0))).when(eventPublisher).publishEvent(any(Object.class));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (queue != null) {
+            queue.stop();
+        }
+    }
+
+    @Test
+    void batchKeepsOnlyTheLatestJobPerDocument() {
+        queue = start(100, 32, 200, 1, Duration.ofMillis(10));
+
+        queue.submit(document("a", "first"));
+        queue.submitDelete("b");
+        queue.submit(document("a", "second"));
+        awaitUntil(() -> !events.isEmpty());
+
+        assertThat(written).containsExactlyInAnyOrder("a=second", "b deleted");
+        assertThat(events.get(0).documentIds()).containsExactlyInAnyOrder("a", "b");
+        assertThat(events.get(0).types()).containsExactly("product");
+    }
+
+    @Test
+    void jobsForOneDocumentAreWrittenInSubmissionOrder() {
+        queue = start(100, 1, 0, 2, Duration.ofMillis(10));
+
+        for (int version = 1; version <= 20; version++) {
+            queue.submit(document("a", "v" + version));
+            queue.submit(document("b", "v" + version));
+        }
+        awaitUntil(() -> written.contains("a=v20") && written.contains("b=v20"));
+
+        for (String id : List.of("a", "b")) {
+            List<Integer> versions = written.stream()
+                    .filter(entry -> entry.startsWith(id + "="))
+                    .map(entry -> Integer.parseInt(entry.substring(id.length() + 2)))
+                    .toList();
+            assertThat(versions).isSorted();
+        }
+    }
+
+    @Test
+    void failedBatchIsRetriedWithBackoff() {
+        AtomicInteger calls = new AtomicInteger();
+        doAnswer(call -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new IllegalStateException("ollama unavailable");
+            }
+            written.add("ok");
+            return null;
+        }).when(vectorStore).add(anyList());
+        queue = start(100, 32, 0, 1, Duration.ofMillis(10));
+
+        queue.submit(document("a", "text"));
+        awaitUntil(() -> !events.isEmpty());
+
+        assertThat(calls).hasValue(3);
+        assertThat(registry.get("intellibuy.embedding.batch.retries").counter().count()).isEqualTo(2);
+        assertThat(registry.get("intellibuy.embedding.failed").counter().count()).isZero();
+    }
+
+    @Test
+    void batchIsDroppedAfterTheLastAttempt() {
+        doAnswer(call -> {
+            throw new IllegalStateException("ollama unavailable");
+        }).when(vectorStore).add(anyList());
+        queue = start(100, 32, 0, 1, Duration.ofMillis(10));
+
+        queue.submit(document("a", "text"));
+        queue.submit(document("b", "text"));
+        awaitUntil(() -> registry.get("intellibuy.embedding.failed").counter().count() == 2);
+
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void fullPartitionDropsTheJobInsteadOfBlockingTheCaller() {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(call -> {
+            writing.countDown();
+            release.await();
+            return null;
+        }).when(vectorStore).add(anyList());
+        queue = start(1, 1, 0, 1, Duration.ofMillis(50));
+
+        queue.submit(document("a", "taken by the worker"));
+        await(writing);
+        queue.submit(document("b", "fills the partition"));
+        long started = System.nanoTime();
+        queue.submit(document("c", "does not fit"));
+
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(1));
+        assertThat(registry.get("intellibuy.embedding.queue.rejected").counter().count()).isEqualTo(1);
+        assertThat(queue.depth()).isEqualTo(1);
+        release.countDown();
+    }
+
+    @Test
+    void stopWritesTheBatchAWorkerWasCollecting() throws InterruptedException {
+        queue = start(100, 32, TimeUnit.MINUTES.toMillis(10), 1, Duration.ofMillis(10));
+
+        queue.submit(document("a", "1"));
+        queue.submit(document("b", "2"));
+        awaitUntil(() -> queue.depth() == 0);
+        queue.stop();
+
+        assertThat(written).containsExactlyInAnyOrder("a=1", "b=2");
+        assertThat(events).hasSize(1);
+    }
+
+    @Test
+    void stopWritesABatchWaitingToBeRetried() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        doAnswer(call -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("ollama unavailable");
+            }
+            written.add("a written");
+            return null;
+        }).when(vectorStore).add(anyList());
+        queue = start(100, 32, 0, 1, Duration.ofMinutes(10));
+
+        queue.submit(document("a", "text"));
+        awaitUntil(() -> registry.get("intellibuy.embedding.batch.retries").counter().count() == 1);
+        queue.submit(document("b", "queued behind"));
+        long started = System.nanoTime();
+        queue.stop();
+
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(5));
+        assertThat(calls).hasValue(2);
+        assertThat(written).containsExactly("a written");
+        assertThat(events.get(0).documentIds()).containsExactlyInAnyOrder("a", "b");
+    }
+
+    private EmbeddingQueue start(int capacity, int batchSize, long lingerMillis, int workers, Duration offerTimeout) {
+        EmbeddingQueue started = new EmbeddingQueue(vectorStore, eventPublisher, mock(IngestionStateService.class),
+                Thread.ofVirtual().factory(), registry, capacity, batchSize, lingerMillis, workers,
+                3, Duration.ofMillis(10), Duration.ofMillis(100), offerTimeout);
+        started.start();
+        return started;
+    }
+
+    private static Document document(String id, String text) {
+        return Document.builder().id(id).text(text).metadata(Map.of("type", "product")).build();
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Condition not met in time");
+            }
+            sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
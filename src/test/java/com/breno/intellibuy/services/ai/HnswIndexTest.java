@@ -0,0 +1,184 @@
+package com.breno.intellibuy.services.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 16;
+    private static final int M = 16;
+    private static final int EF = 100;
+
+    private final SplittableRandom random = new SplittableRandom(7);
+
+    @Test
+    void findsTheNearestNeighboursOfAStoredVector() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, M, EF, 16);
+        List<float[]> vectors = randomVectors(500);
+        vectors.forEach(index::add);
+
+        int found = 0;
+        for (int node = 0; node < vectors.size(); node += 10) {
+            long[] hits = index.search(vectors.get(node), 10, EF, null);
+            assertThat(HnswIndex.nodeOf(hits[0])).isEqualTo(node);
+            found += overlap(hits, bruteForce(vectors, vectors.get(node), 10, n -> true));
+        }
+
+        assertThat(found).isGreaterThanOrEqualTo((int) (0.95 * 50 * 10));
+    }
+
+    @Test
+    void filteredSearchOnlyReturnsAcceptedNodes() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, M, EF, 16);
+        List<float[]> vectors = randomVectors(500);
+        vectors.forEach(index::add);
+
+        float[] query = randomVector();
+        long[] hits = index.search(query, 10, EF, node -> node % 25 == 0);
+
+        assertThat(hits).hasSize(10);
+        assertThat(nodes(hits)).allMatch(node -> node % 25 == 0);
+        assertThat(overlap(hits, bruteForce(vectors, query, 10, node -> node % 25 == 0))).isGreaterThanOrEqualTo(9);
+    }
+
+    @Test
+    void removedNodesAreNotReturned() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, M, EF, 16);
+        List<float[]> vectors = randomVectors(200);
+        vectors.forEach(index::add);
+
+        index.remove(42);
+        index.remove(42);
+
+        assertThat(index.deletedCount()).isEqualTo(1);
+        assertThat(index.isDeleted(42)).isTrue();
+        assertThat(nodes(index.search(vectors.get(42), 10, EF, null))).doesNotContain(42).hasSize(10);
+    }
+
+    @Test
+    void compactionDropsTombstonesAndKeepsLiveDocuments() {
+        LocalVectorIndex index = new LocalVectorIndex(DIMENSIONS, M, EF, 16);
+        for (int i = 0; i < 100; i++) {
+            index.upsert("doc-" + i, "text " + i, Map.of("type", i % 2 == 0 ? "customer" : "product"), randomVector());
+        }
+        float[] moved = randomVector();
+        index.upsert("doc-1", "moved", Map.of("type", "product"), moved);
+        index.remove("doc-2");
+
+        assertThat(index.size()).isEqualTo(99);
+        assertThat(index.tombstones()).isEqualTo(2);
+
+        LocalVectorIndex compacted = index.compacted();
+
+        assertThat(compacted.size()).isEqualTo(99);
+        assertThat(compacted.tombstones()).isZero();
+        Document nearest = compacted.search(moved, 1, 0.0, null, EF).get(0);
+        assertThat(nearest.getId()).isEqualTo("doc-1");
+        assertThat(nearest.getText()).isEqualTo("moved");
+        assertThat(compacted.idsMatching(typeIs("customer"))).hasSize(49).doesNotContain("doc-2");
+    }
+
+    @Test
+    void snapshotRoundTripKeepsDocumentsAndTombstones(@TempDir Path directory) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        LocalVectorIndex index = new LocalVectorIndex(DIMENSIONS, M, EF, 16);
+        List<float[]> vectors = randomVectors(100);
+        for (int i = 0; i < vectors.size(); i++) {
+            index.upsert("doc-" + i, "text " + i, Map.of("type", i % 2 == 0 ? "customer" : "product", "rank", i), vectors.get(i));
+        }
+        index.remove("doc-3");
+
+        Path snapshot = directory.resolve("index.bin");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(snapshot)))) {
+            index.write(out, objectMapper);
+        }
+        LocalVectorIndex restored;
+        try (MappedFileReader in = new MappedFileReader(snapshot)) {
+            restored = LocalVectorIndex.read(in, M, EF, objectMapper);
+        }
+
+        assertThat(restored.size()).isEqualTo(index.size());
+        assertThat(restored.tombstones()).isEqualTo(1);
+        for (int i : new int[]{0, 17, 50, 99}) {
+            List<Document> expected = index.search(vectors.get(i), 5, 0.0, typeIs("customer"), EF);
+            List<Document> actual = restored.search(vectors.get(i), 5, 0.0, typeIs("customer"), EF);
+            assertThat(actual).extracting(Document::getId).isEqualTo(expected.stream().map(Document::getId).toList());
+            assertThat(actual).extracting(Document::getText).isEqualTo(expected.stream().map(Document::getText).toList());
+        }
+        assertThat(restored.search(vectors.get(3), 1, 0.0, null, EF).get(0).getId()).isNotEqualTo("doc-3");
+        Document first = restored.search(vectors.get(10), 1, 0.0, null, EF).get(0);
+        assertThat(first.getMetadata()).containsEntry("type", "customer").containsEntry("rank", 10);
+    }
+
+    private static Filter.Expression typeIs(String type) {
+        return new FilterExpressionBuilder().eq("type", type).build();
+    }
+
+    private List<float[]> randomVectors(int count) {
+        List<float[]> vectors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            vectors.add(randomVector());
+        }
+        return vectors;
+    }
+
+    private float[] randomVector() {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static Set<Integer> bruteForce(List<float[]> vectors, float[] query, int k, IntPredicate accept) {
+        return IntStream.range(0, vectors.size())
+                .filter(accept)
+                .boxed()
+                .sorted(Comparator.comparingDouble(node -> -cosine(vectors.get(node), query)))
+                .limit(k)
+                .collect(Collectors.toSet());
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    private static List<Integer> nodes(long[] hits) {
+        return Arrays.stream(hits).mapToInt(HnswIndex::nodeOf).boxed().toList();
+    }
+
+    private static int overlap(long[] hits, Set<Integer> expected) {
+        return (int) nodes(hits).stream().filter(expected::contains).count();
+    }
+
+}
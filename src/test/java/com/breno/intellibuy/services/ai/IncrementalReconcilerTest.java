@@ -0,0 +1,205 @@
+package com.breno.intellibuy.services.ai;
+
+import com.breno.intellibuy.dto.ChangeMarker;
+import com.breno.intellibuy.model.EntityDeletion;
+import com.breno.intellibuy.model.Product;
+import com.breno.intellibuy.model.SyncWatermark;
+import com.breno.intellibuy.repository.CustomerRepository;
+import com.breno.intellibuy.repository.EntityDeletionRepository;
+import com.breno.intellibuy.repository.ProductRepository;
+import com.breno.intellibuy.repository.PurchaseRepository;
+import com.breno.intellibuy.repository.SyncWatermarkRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IncrementalReconcilerTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 5, 1, 12, 0);
+    private static final Duration SAFETY_LAG = Duration.ofSeconds(30);
+    private static final int BATCH_SIZE = 2;
+
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private final CustomerRepository customerRepository = mock(CustomerRepository.class);
+    private final PurchaseRepository purchaseRepository = mock(PurchaseRepository.class);
+    private final SyncWatermarkRepository watermarkRepository = mock(SyncWatermarkRepository.class);
+    private final EntityDeletionRepository deletionRepository = mock(EntityDeletionRepository.class);
+    private final VectorStore vectorStore = mock(VectorStore.class);
+    private final IngestionStateService ingestionStateService = mock(IngestionStateService.class);
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    private final List<ChangeMarker> productChanges = new ArrayList<>();
+    private final List<EntityDeletion> deletions = new ArrayList<>();
+    private final Map<String, SyncWatermark> watermarks = new HashMap<>();
+    private final List<String> added = new ArrayList<>();
+    private final List<String> removed = new ArrayList<>();
+    private final List<VectorStoreChangedEvent> events = new ArrayList<>();
+
+    private final IncrementalReconciler reconciler = new IncrementalReconciler(
+            productRepository, customerRepository, purchaseRepository, watermarkRepository, deletionRepository,
+            new EmbeddingDocumentFactory(), vectorStore, ingestionStateService, eventPublisher, jdbcTemplate,
+            mock(TaskScheduler.class), new SimpleMeterRegistry(), true, BATCH_SIZE, SAFETY_LAG);
+
+    IncrementalReconcilerTest() {
+        when(ingestionStateService.isInitialIngestionComplete()).thenReturn(true);
+        when(ingestionStateService.recordVectorStoreWrite()).thenReturn(7L);
+        when(jdbcTemplate.queryForObject(anyString(), eq(LocalDateTime.class))).thenReturn(NOW);
+
+        // same keyset predicate and order as the JPQL in ProductRepository.findChangedAfter
+        when(productRepository.findChangedAfter(any(), any(), any(), any())).thenAnswer(call -> {
+            LocalDateTime since = call.getArgument(0);
+            Long id = call.getArgument(1);
+            LocalDateTime until = call.getArgument(2);
+            Limit limit = call.getArgument(3);
+            return productChanges.stream()
+                    .filter(change -> change.updatedAt().isAfter(since)
+                            || (change.updatedAt().isEqual(since) && change.id() > id))
+                    .filter(change -> !change.updatedAt().isAfter(until))
+                    .sorted(Comparator.comparing(ChangeMarker::updatedAt).thenComparing(ChangeMarker::id))
+                    .limit(limit.max())
+                    .toList();
+        });
+        when(productRepository.findAllById(anyList())).thenAnswer(call -> call.<List<Long>>getArgument(0).stream()
+                .map(id -> new Product(id, "Product " + id, BigDecimal.TEN, null, null))
+                .toList());
+        when(customerRepository.findChangedAfter(any(), any(), any(), any())).thenReturn(List.of());
+        when(purchaseRepository.findChangedAfter(any(), any(), any(), any())).thenReturn(List.of());
+
+        when(deletionRepository.findByOrderByIdAsc(any())).thenAnswer(call ->
+                List.copyOf(deletions.subList(0, Math.min(deletions.size(), call.<Limit>getArgument(0).max()))));
+        doAnswer(call -> deletions.removeAll(call.<List<EntityDeletion>>getArgument(0)))
+                .when(deletionRepository).deleteAllInBatch(anyList());
+
+        when(watermarkRepository.findById(anyString())).thenAnswer(call ->
+                Optional.ofNullable(watermarks.get(call.<String>getArgument(0))));
+        when(watermarkRepository.save(any())).thenAnswer(call -> {
+            SyncWatermark watermark = call.getArgument(0);
+            watermarks.put(watermark.getEntityType(), watermark);
+            return watermark;
+        });
+
+        doAnswer(call -> {
+            for (Document document : call.<List<Document>>getArgument(0)) {
+                added.add(document.getId());
+            }
+            return null;
+        }).when(vectorStore).add(anyList());
+        doAnswer(call -> removed.addAll(call.<List<String>>getArgument(0))).when(vectorStore).delete(anyList());
+        doAnswer(call -> events.add(call.getArgument(0))).when(eventPublisher).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void pagesThroughRowsSharingATimestampWithoutSkippingOrRepeating() {
+        LocalDateTime tied = NOW.minusMinutes(5);
+        productChanges.add(new ChangeMarker(4L, tied));
+        productChanges.add(new ChangeMarker(1L, tied));
+        productChanges.add(new ChangeMarker(3L, tied));
+        productChanges.add(new ChangeMarker(2L, NOW.minusMinutes(10)));
+        productChanges.add(new ChangeMarker(5L, NOW.minusMinutes(1)));
+
+        reconciler.reconcile();
+
+        assertThat(added).containsExactly(
+                EmbeddingDocumentFactory.documentId("product", 2L),
+                EmbeddingDocumentFactory.documentId("product", 1L),
+                EmbeddingDocumentFactory.documentId("product", 3L),
+                EmbeddingDocumentFactory.documentId("product", 4L),
+                EmbeddingDocumentFactory.documentId("product", 5L));
+        SyncWatermark watermark = watermarks.get("product");
+        assertThat(watermark.getChangedThrough()).isEqualTo(NOW.minusMinutes(1));
+        assertThat(watermark.getLastId()).isEqualTo(5L);
+        // five rows in pages of two: 2, 2, 1
+        verify(productRepository, times(3)).findChangedAfter(any(), any(), any(), any());
+    }
+
+    @Test
+    void leavesChangesInsideTheSafetyLagForTheNextRun() {
+        productChanges.add(new ChangeMarker(1L, NOW.minusMinutes(1)));
+        productChanges.add(new ChangeMarker(2L, NOW.minusSeconds(10)));
+
+        reconciler.reconcile();
+
+        assertThat(added).containsExactly(EmbeddingDocumentFactory.documentId("product", 1L));
+        assertThat(watermarks.get("product").getLastId()).isEqualTo(1L);
+
+        when(jdbcTemplate.queryForObject(anyString(), eq(LocalDateTime.class))).thenReturn(NOW.plusMinutes(1));
+        reconciler.reconcile();
+
+        assertThat(added).containsExactly(
+                EmbeddingDocumentFactory.documentId("product", 1L),
+                EmbeddingDocumentFactory.documentId("product", 2L));
+    }
+
+    @Test
+    void resumesFromTheSavedWatermark() {
+        productChanges.add(new ChangeMarker(1L, NOW.minusMinutes(10)));
+        productChanges.add(new ChangeMarker(2L, NOW.minusMinutes(5)));
+        watermarks.put("product", new SyncWatermark("product", NOW.minusMinutes(10), 1L, null));
+
+        reconciler.reconcile();
+
+        assertThat(added).containsExactly(EmbeddingDocumentFactory.documentId("product", 2L));
+    }
+
+    @Test
+    void drainsDeletionsInBatchesAndReportsOneChange() {
+        for (long id = 1; id <= 5; id++) {
+            deletions.add(new EntityDeletion(id, "customer", 100 + id, NOW));
+        }
+        productChanges.add(new ChangeMarker(1L, NOW.minusMinutes(5)));
+
+        reconciler.reconcile();
+
+        assertThat(deletions).isEmpty();
+        assertThat(removed).containsExactly(
+                EmbeddingDocumentFactory.documentId("customer", 101L),
+                EmbeddingDocumentFactory.documentId("customer", 102L),
+                EmbeddingDocumentFactory.documentId("customer", 103L),
+                EmbeddingDocumentFactory.documentId("customer", 104L),
+                EmbeddingDocumentFactory.documentId("customer", 105L));
+        assertThat(events).singleElement().satisfies(event -> {
+            assertThat(event.documentCount()).isEqualTo(6);
+            assertThat(event.version()).isEqualTo(7L);
+            assertThat(event.types()).containsExactly("product");
+        });
+    }
+
+    @Test
+    void skipsRunsBeforeInitialIngestionCompletes() {
+        when(ingestionStateService.isInitialIngestionComplete()).thenReturn(false);
+        productChanges.add(new ChangeMarker(1L, NOW.minusMinutes(5)));
+
+        reconciler.reconcile();
+
+        assertThat(added).isEmpty();
+        assertThat(events).isEmpty();
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.breno.intellibuy.services.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LocalVectorStoreTest {
+
+    private static final SearchRequest QUERY = SearchRequest.builder().query("anything").topK(1).build();
+
+    private final PgVectorStore pgvector = mock(PgVectorStore.class);
+    private final IngestionStateService ingestionState = mock(IngestionStateService.class);
+    private final EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final AtomicLong version = new AtomicLong(100);
+    private final List<Thread> rebuildThreads = Collections.synchronizedList(new ArrayList<>());
+    private LocalVectorStore store;
+
+    private void createStore(Path directory) {
+        when(ingestionState.vectorStoreVersion()).thenAnswer(call -> version.get());
+        when(embeddingModel.embed(anyString())).thenReturn(new float[]{1, 0, 0});
+        store = new LocalVectorStore(pgvector, ingestionState, embeddingModel, jdbcTemplate, new ObjectMapper(),
+                task -> {
+                    Thread thread = Thread.ofVirtual().unstarted(task);
+                    rebuildThreads.add(thread);
+                    return thread;
+                }, new SimpleMeterRegistry(), "public", "vector_store", 3, 16, 100, 50,
+                directory.resolve("index.bin"));
+        store.rebuild();
+        clearInvocations(pgvector);
+    }
+
+    @Test
+    void interleavedWritersOfThisNodeKeepTheIndexInSync(@TempDir Path directory) throws InterruptedException {
+        createStore(directory);
+
+        // two writers each take a version, then publish their events in whichever order they finish
+        List<Long> published = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch bothWritten = new CountDownLatch(2);
+        List<Thread> writers = new ArrayList<>();
+        for (int writer = 0; writer < 2; writer++) {
+            writers.add(Thread.ofVirtual().start(() -> {
+                for (int i = 0; i < 50; i++) {
+                    long written = version.incrementAndGet();
+                    if (i == 0) {
+                        bothWritten.countDown();
+                        await(bothWritten);
+                    }
+                    store.onVectorStoreChanged(new VectorStoreChangedEvent(1, written));
+                    published.add(written);
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.join(5_000);
+        }
+
+        assertThat(published).hasSize(100);
+        store.checkVersion();
+        store.checkVersion();
+        store.similaritySearch(QUERY);
+
+        verify(pgvector, never()).similaritySearch(any(SearchRequest.class));
+        assertThat(rebuilds()).isEqualTo(1);
+    }
+
+    @Test
+    void swappedVersionsDoNotLookLikeAnotherNode(@TempDir Path directory) {
+        createStore(directory);
+
+        store.onVectorStoreChanged(new VectorStoreChangedEvent(1, 102));
+        store.onVectorStoreChanged(new VectorStoreChangedEvent(1, 101));
+        version.set(102);
+        store.checkVersion();
+        store.checkVersion();
+        store.similaritySearch(QUERY);
+
+        verify(pgvector, never()).similaritySearch(any(SearchRequest.class));
+        assertThat(rebuilds()).isEqualTo(1);
+    }
+
+    @Test
+    void versionThatNeverArrivesTriggersARebuild(@TempDir Path directory) throws InterruptedException {
+        createStore(directory);
+
+        // version 101 was written by another node
+        store.onVectorStoreChanged(new VectorStoreChangedEvent(1, 102));
+        version.set(102);
+        store.checkVersion();
+        store.similaritySearch(QUERY);
+        verify(pgvector, never()).similaritySearch(any(SearchRequest.class));
+
+        store.checkVersion();
+        assertThat(rebuildThreads).hasSize(1);
+        rebuildThreads.get(0).join(5_000);
+
+        assertThat(rebuilds()).isEqualTo(2);
+    }
+
+    private int rebuilds() {
+        return (int) mockingDetails(jdbcTemplate).getInvocations().stream()
+                .filter(invocation -> invocation.getMethod().getName().equals("query")
+                        && invocation.getArgument(0).toString().contains("ORDER BY id"))
+                .count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
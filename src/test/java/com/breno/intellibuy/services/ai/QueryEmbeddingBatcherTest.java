@@ -0,0 +1,248 @@
+package com.breno.intellibuy.services.ai;
+
+import io.micrometer.context.ContextRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QueryEmbeddingBatcherTest {
+
+    private static final ThreadLocal<String> REQUEST = new ThreadLocal<>();
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+    private final ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+    private QueryEmbeddingBatcher batcher;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (batcher != null) {
+            batcher.stop();
+        }
+        callers.shutdownNow();
+        ContextRegistry.getInstance().removeThreadLocalAccessor("test.request");
+    }
+
+    @Test
+    void concurrentQueriesShareOneCallAndDuplicatesShareOneText() throws Exception {
+        batcher = start(recordingEmbedder(), 16, 500, 4);
+        CountDownLatch go = new CountDownLatch(1);
+
+        List<Future<float[]>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String text = "question " + i;
+            results.add(callers.submit(() -> {
+                go.await();
+                return batcher.embed(text, text);
+            }));
+        }
+        for (int i = 0; i < 5; i++) {
+            results.add(callers.submit(() -> {
+                go.await();
+                return batcher.embed("same", "same question");
+            }));
+        }
+        go.countDown();
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(results.get(i).get(5, TimeUnit.SECONDS)).containsExactly(("question " + i).length());
+        }
+        for (int i = 10; i < 15; i++) {
+            assertThat(results.get(i).get(5, TimeUnit.SECONDS)).containsExactly("same question".length());
+        }
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).hasSize(11);
+        assertThat(registry.get("intellibuy.embedding.query.coalesced").counter().count()).isEqualTo(4);
+    }
+
+    @Test
+    void stopRunsTheQueriesStillQueued() throws Exception {
+        batcher = start(recordingEmbedder(), 16, TimeUnit.MINUTES.toMillis(1), 4);
+        // platform threads, whose state reliably shows when they are blocked
+        ExecutorService platformCallers = Executors.newFixedThreadPool(3);
+
+        List<Thread> waiting = Collections.synchronizedList(new ArrayList<>());
+        List<Future<float[]>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String text = "question " + i;
+            CountDownLatch started = new CountDownLatch(1);
+            results.add(platformCallers.submit(() -> {
+                waiting.add(Thread.currentThread());
+                started.countDown();
+                return batcher.embed(text, text);
+            }));
+            started.await();
+        }
+        awaitBlocked(waiting);
+
+        long stopping = System.nanoTime();
+        batcher.stop();
+
+        for (Future<float[]> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).hasSize(1);
+        }
+        assertThat(Duration.ofNanos(System.nanoTime() - stopping)).isLessThan(Duration.ofSeconds(5));
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsExactlyInAnyOrder("question 0", "question 1", "question 2");
+        platformCallers.shutdown();
+    }
+
+    @Test
+    void queriesAfterStopRunOnTheCallerThread() {
+        batcher = start(recordingEmbedder(), 16, 5, 4);
+        stopQuietly();
+
+        assertThat(batcher.embed("late", "late question")).containsExactly("late question".length());
+        assertThat(batches).containsExactly(List.of("late question"));
+    }
+
+    @Test
+    void limitsConcurrentBatches() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        batcher = start(texts -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep(50);
+            running.decrementAndGet();
+            return vectors(texts);
+        }, 1, 0, 2);
+
+        List<Future<float[]>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String text = "question " + i;
+            results.add(callers.submit(() -> batcher.embed(text, text)));
+        }
+        for (Future<float[]> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(peak.get()).isBetween(1, 2);
+    }
+
+    @Test
+    void failureReachesEveryCallerInTheBatch() throws Exception {
+        batcher = start(texts -> {
+            throw new IllegalStateException("model unavailable");
+        }, 16, 200, 4);
+
+        List<Future<float[]>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String text = "question " + i;
+            results.add(callers.submit(() -> batcher.embed(text, text)));
+        }
+
+        for (Future<float[]> result : results) {
+            assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(IllegalStateException.class)
+                    .hasRootCauseMessage("model unavailable");
+        }
+    }
+
+    @Test
+    void callersGiveUpWith503AfterMaxWait() {
+        CountDownLatch release = new CountDownLatch(1);
+        batcher = new QueryEmbeddingBatcher(texts -> {
+            await(release);
+            return vectors(texts);
+        }, Thread.ofVirtual().factory(), registry, 100, 16, 5, 4, Duration.ofMillis(100));
+        batcher.start();
+
+        assertThatThrownBy(() -> batcher.embed("slow", "slow question"))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+        release.countDown();
+    }
+
+    @Test
+    void batchRunsInTheContextOfTheCallerThatOpenedIt() throws Exception {
+        ContextRegistry.getInstance().registerThreadLocalAccessor("test.request", REQUEST);
+        List<String> seen = Collections.synchronizedList(new ArrayList<>());
+        batcher = start(texts -> {
+            seen.add(REQUEST.get());
+            return vectors(texts);
+        }, 16, 5, 4);
+
+        callers.submit(() -> {
+            REQUEST.set("request-1");
+            try {
+                return batcher.embed("traced", "traced question");
+            } finally {
+                REQUEST.remove();
+            }
+        }).get(5, TimeUnit.SECONDS);
+
+        assertThat(seen).containsExactly("request-1");
+    }
+
+    private QueryEmbeddingBatcher start(Function<List<String>, List<float[]>> embedder, int maxBatchSize,
+                                        long lingerMillis, int maxConcurrentBatches) {
+        QueryEmbeddingBatcher started = new QueryEmbeddingBatcher(embedder, Thread.ofVirtual().factory(), registry,
+                100, maxBatchSize, lingerMillis, maxConcurrentBatches, Duration.ofSeconds(5));
+        started.start();
+        return started;
+    }
+
+    private Function<List<String>, List<float[]>> recordingEmbedder() {
+        return texts -> {
+            batches.add(List.copyOf(texts));
+            return vectors(texts);
+        };
+    }
+
+    private static List<float[]> vectors(List<String> texts) {
+        return texts.stream().map(text -> new float[]{text.length()}).toList();
+    }
+
+    private void stopQuietly() {
+        try {
+            batcher.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitBlocked(List<Thread> threads) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!threads.stream().allMatch(thread -> thread.getState() == Thread.State.TIMED_WAITING)) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Callers did not start waiting");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}